@@ -0,0 +1,131 @@
+package cpw.mods.cl.benchmarks;
+
+import cpw.mods.cl.JarModuleFinder;
+import cpw.mods.cl.ModuleClassLoader;
+import cpw.mods.jarhandling.SecureJar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-class cost of reading and defining classes from a jar on a single thread.
+ * Run with {@code -prof gc} (the jmh task does) to see the bytes allocated per class.
+ * {@code defineClass} compares defining from the pooled direct buffer a class was read into,
+ * which loaders without a transformer do, against reading it into an array first, which transforming loaders do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassLoadingBenchmark {
+    private static final int PACKAGES = 10;
+    private static final int CLASSES_PER_PACKAGE = 100;
+    private static final int CLASSES = PACKAGES * CLASSES_PER_PACKAGE;
+
+    private Path jarFile;
+    private List<String> classNames;
+    private BytesClassLoader classLoader;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        jarFile = Files.createTempFile("sjh-classloading", ".jar");
+        classNames = GeneratedClasses.writeJar(jarFile, "classloading", PACKAGES, CLASSES_PER_PACKAGE);
+        classLoader = createLayer(jarFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(jarFile);
+    }
+
+    private static BytesClassLoader createLayer(Path jarFile) {
+        return createLayer(jarFile, BytesClassLoader::new);
+    }
+
+    private static <T extends ModuleClassLoader> T createLayer(Path jarFile, Function<Configuration, T> loaderFactory) {
+        var jar = SecureJar.from(jarFile);
+        var configuration = Configuration.resolveAndBind(JarModuleFinder.of(jar), List.of(ModuleLayer.boot().configuration()), ModuleFinder.of(), List.of(jar.name()));
+        var classLoader = loaderFactory.apply(configuration);
+        ModuleLayer.defineModules(configuration, List.of(ModuleLayer.boot()), m -> classLoader);
+        return classLoader;
+    }
+
+    /**
+     * A layer that has not loaded any class yet, created before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class FreshLayer {
+        @Param({"buffer", "array"})
+        public String definePath;
+        private ModuleClassLoader classLoader;
+
+        @Setup(Level.Invocation)
+        public void createLayer(ClassLoadingBenchmark benchmark) {
+            classLoader = definePath.equals("buffer")
+                    ? ClassLoadingBenchmark.createLayer(benchmark.jarFile)
+                    : ClassLoadingBenchmark.createLayer(benchmark.jarFile, ArrayClassLoader::new);
+        }
+    }
+
+    /**
+     * Reads and defines every class of a fresh layer.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CLASSES)
+    public void defineClass(FreshLayer layer, Blackhole blackhole) throws ClassNotFoundException {
+        for (var name : classNames) {
+            blackhole.consume(Class.forName(name, false, layer.classLoader));
+        }
+    }
+
+    /**
+     * Only reads the bytes of a class, as a transformer asking for them would.
+     */
+    @Benchmark
+    public byte[] readClassBytes() throws ClassNotFoundException {
+        var name = classNames.get(next++ % CLASSES);
+        return classLoader.readClassBytes(name);
+    }
+
+    private static class BytesClassLoader extends ModuleClassLoader {
+        BytesClassLoader(Configuration configuration) {
+            super("classloading", configuration, List.of(ModuleLayer.boot()));
+        }
+
+        byte[] readClassBytes(String name) throws ClassNotFoundException {
+            return getMaybeTransformedClassBytes(name, null);
+        }
+    }
+
+    /**
+     * Has a transformer that changes nothing, so classes are read into an array before they are defined.
+     */
+    private static class ArrayClassLoader extends ModuleClassLoader {
+        ArrayClassLoader(Configuration configuration) {
+            super("classloading", configuration, List.of(ModuleLayer.boot()));
+        }
+
+        @Override
+        protected byte[] maybeTransformClassBytes(byte[] bytes, String name, String context) {
+            return bytes;
+        }
+    }
+}
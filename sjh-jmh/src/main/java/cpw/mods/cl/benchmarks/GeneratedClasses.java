@@ -0,0 +1,47 @@
+package cpw.mods.cl.benchmarks;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Writes jars of empty classes for the class loading benchmarks, so they can load thousands of classes without dependencies.
+ */
+final class GeneratedClasses {
+    private GeneratedClasses() {}
+
+    /**
+     * Writes a jar with classes {@code <prefix>.p<n>.C<m>}.
+     *
+     * @return the binary names of the classes, in the order they were written
+     */
+    static List<String> writeJar(Path jar, String prefix, int packages, int classesPerPackage) throws IOException {
+        var classNames = new ArrayList<String>(packages * classesPerPackage);
+        try (var out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (int p = 0; p < packages; p++) {
+                for (int c = 0; c < classesPerPackage; c++) {
+                    var internalName = prefix + "/p" + p + "/C" + c;
+                    out.putNextEntry(new JarEntry(internalName + ".class"));
+                    out.write(emptyClass(internalName));
+                    out.closeEntry();
+                    classNames.add(internalName.replace('/', '.'));
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private static byte[] emptyClass(String internalName) {
+        var cw = new ClassWriter(0);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+package cpw.mods.cl.benchmarks;
+
+import cpw.mods.cl.JarModuleFinder;
+import cpw.mods.cl.ModuleClassLoader;
+import cpw.mods.jarhandling.SecureJar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of looking for the same missing class or resource over and over, as libraries probing for optional
+ * dependencies do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MissBenchmark {
+    private Path jarFile;
+    private ModuleClassLoader classLoader;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        jarFile = Files.createTempFile("sjh-misses", ".jar");
+        GeneratedClasses.writeJar(jarFile, "misses", 10, 10);
+        var jar = SecureJar.from(jarFile);
+        var configuration = Configuration.resolveAndBind(JarModuleFinder.of(jar), List.of(ModuleLayer.boot().configuration()), ModuleFinder.of(), List.of(jar.name()));
+        classLoader = new ModuleClassLoader("misses", configuration, List.of(ModuleLayer.boot()));
+        ModuleLayer.defineModules(configuration, List.of(ModuleLayer.boot()), m -> classLoader);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(jarFile);
+    }
+
+    /**
+     * A class in a package of the layer, which the jar does not have.
+     */
+    @Benchmark
+    public Object missingClassInKnownPackage() {
+        try {
+            return Class.forName("misses.p0.Missing", false, classLoader);
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+
+    /**
+     * A resource in a package of the layer, which the jar does not have.
+     */
+    @Benchmark
+    public URL missingResourceInKnownPackage() {
+        return classLoader.getResource("misses/p0/missing.txt");
+    }
+
+    /**
+     * A resource outside of any package, which no jar has.
+     */
+    @Benchmark
+    public URL missingRootResource() {
+        return classLoader.getResource("pack.mcmeta");
+    }
+}
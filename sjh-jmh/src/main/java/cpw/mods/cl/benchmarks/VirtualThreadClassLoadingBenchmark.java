@@ -0,0 +1,129 @@
+package cpw.mods.cl.benchmarks;
+
+import cpw.mods.cl.JarModuleFinder;
+import cpw.mods.cl.ModuleClassLoader;
+import cpw.mods.jarhandling.SecureJar;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads thousands of classes of a fresh layer from many virtual threads at once.
+ *
+ * <p>A JFR recording of {@code jdk.VirtualThreadPinned} events runs for the whole trial.
+ * At the end, the number of times a carrier thread got pinned is printed, grouped by the first frame outside of the JDK.
+ * With no monitors held around class reading, no securejarhandler frames should show up there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VirtualThreadClassLoadingBenchmark {
+    private static final int PACKAGES = 20;
+    private static final int CLASSES_PER_PACKAGE = 200;
+
+    @Param({"64", "1024"})
+    public int virtualThreads;
+
+    private Path jarFile;
+    private List<String> classNames;
+    private Recording recording;
+    private ModuleClassLoader classLoader;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        jarFile = Files.createTempFile("sjh-vthreads", ".jar");
+        classNames = GeneratedClasses.writeJar(jarFile, "vthreads", PACKAGES, CLASSES_PER_PACKAGE);
+
+        recording = new Recording();
+        recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+        recording.start();
+    }
+
+    @Setup(Level.Invocation)
+    public void createLayer() {
+        var jar = SecureJar.from(jarFile);
+        var configuration = Configuration.resolveAndBind(JarModuleFinder.of(jar), List.of(ModuleLayer.boot().configuration()), ModuleFinder.of(), List.of(jar.name()));
+        classLoader = new ModuleClassLoader("vthreads", configuration, List.of(ModuleLayer.boot()));
+        ModuleLayer.defineModules(configuration, List.of(ModuleLayer.boot()), m -> classLoader);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportPinning() throws IOException {
+        recording.stop();
+        var dump = Files.createTempFile("sjh-vthreads", ".jfr");
+        try {
+            recording.dump(dump);
+            var pinnedBy = new TreeMap<String, Integer>();
+            int events = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+                events++;
+                pinnedBy.merge(pinningFrame(event), 1, Integer::sum);
+            }
+            System.out.println();
+            System.out.println("Virtual thread pinned events: " + events);
+            for (Map.Entry<String, Integer> entry : pinnedBy.entrySet()) {
+                System.out.println("  " + entry.getValue() + "\t" + entry.getKey());
+            }
+        } finally {
+            recording.close();
+            Files.deleteIfExists(dump);
+            Files.deleteIfExists(jarFile);
+        }
+    }
+
+    // The top frames are the parking code of the JDK, the interesting one is the first frame outside of it
+    private static String pinningFrame(RecordedEvent event) {
+        var stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) return "<no stack trace>";
+        var frames = stackTrace.getFrames();
+        var frame = frames.stream()
+                .filter(f -> f.isJavaFrame() && !f.getMethod().getType().getName().startsWith("java.") && !f.getMethod().getType().getName().startsWith("jdk."))
+                .findFirst()
+                .orElse(frames.get(0));
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+    }
+
+    @Benchmark
+    public void loadAllClasses(Blackhole blackhole) throws Exception {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<?>>(virtualThreads);
+            for (int t = 0; t < virtualThreads; t++) {
+                final int start = t;
+                futures.add(executor.submit(() -> {
+                    // Every thread walks all classes from a different offset, so they race on the same packages and classes
+                    for (int i = 0; i < classNames.size(); i++) {
+                        var name = classNames.get((start * 31 + i) % classNames.size());
+                        blackhole.consume(Class.forName(name, false, classLoader));
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) future.get();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cpw.mods.jarhandling.benchmarks;
+
+import cpw.mods.jarhandling.SecureJar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies every entry of a signed jar from several threads at once.
+ * A fresh jar is opened before each invocation, so every entry really gets hashed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignedJarVerificationBenchmark {
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    private Path signedJar;
+    private Map<String, byte[]> entries;
+    private ExecutorService executor;
+    private SecureJar jar;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        signedJar = Paths.get("src", "testjars", "signedtestjar.jar").toAbsolutePath().normalize();
+        entries = new LinkedHashMap<>();
+        var source = SecureJar.from(signedJar);
+        var root = source.getRootPath();
+        try (var walk = Files.walk(root)) {
+            for (var path : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                var name = root.relativize(path).toString();
+                if (!name.startsWith("META-INF/"))
+                    entries.put(name, Files.readAllBytes(path));
+            }
+        } finally {
+            source.close();
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void openJar() {
+        jar = SecureJar.from(signedJar);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJar() throws IOException {
+        jar.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void verifyAllEntries(Blackhole blackhole) throws Exception {
+        var provider = jar.moduleDataProvider();
+        var names = new ArrayList<>(entries.keySet());
+        var futures = new ArrayList<Future<?>>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int start = t;
+            futures.add(executor.submit(() -> {
+                // Each thread walks all entries from a different offset, so they race on the same jar
+                for (int i = 0; i < names.size(); i++) {
+                    var name = names.get((start * names.size() / threads + i) % names.size());
+                    blackhole.consume(provider.verifyAndGetSigners(name, entries.get(name)));
+                }
+            }));
+        }
+        for (var future : futures) future.get();
+    }
+}
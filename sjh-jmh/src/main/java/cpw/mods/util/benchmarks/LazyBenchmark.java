@@ -0,0 +1,65 @@
+package cpw.mods.util.benchmarks;
+
+import cpw.mods.util.Lazy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures read throughput of an already initialized {@link Lazy} when many threads hit it at once,
+ * compared to a lazy value that takes a monitor on every read.
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LazyBenchmark {
+    private Lazy<Object> lazy;
+    private SynchronizedLazy<Object> synchronizedLazy;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        lazy = Lazy.of(Object::new);
+        synchronizedLazy = new SynchronizedLazy<>(Object::new);
+    }
+
+    @Benchmark
+    public Object lazyGet() {
+        return lazy.get();
+    }
+
+    @Benchmark
+    public Object synchronizedGet() {
+        return synchronizedLazy.get();
+    }
+
+    /**
+     * The previous {@link Lazy} implementation, kept as a baseline.
+     */
+    private static class SynchronizedLazy<T> {
+        private final Supplier<T> provider;
+        private boolean initialized;
+        private T value;
+
+        SynchronizedLazy(Supplier<T> provider) {
+            this.provider = provider;
+        }
+
+        synchronized T get() {
+            if (!initialized) {
+                initialized = true;
+                value = provider.get();
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package cpw.mods.cl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the classes a class file refers to from the {@code CONSTANT_Class} entries of its constant pool,
+ * without parsing anything past the pool.
+ */
+final class ClassFileReferences {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private ClassFileReferences() {}
+
+    /**
+     * {@return the binary names of the classes the class file refers to, including the element classes of arrays,
+     * or an empty list if it is not a valid class file}
+     *
+     * @param classFile the class file, from its position to its limit, which are left as they are
+     */
+    static List<String> classNames(final ByteBuffer classFile) {
+        try {
+            if (readInt(classFile, 0) != MAGIC) return List.of();
+            int count = readShort(classFile, 8);
+            // Offsets of the Utf8 entries, and the Utf8 index of each Class entry
+            var utf8Offsets = new int[count];
+            var classNameIndexes = new int[count];
+            int classes = 0;
+            int offset = 10;
+            for (int i = 1; i < count; i++) {
+                int tag = classFile.get(classFile.position() + offset) & 0xFF;
+                switch (tag) {
+                    case 1 -> {
+                        utf8Offsets[i] = offset + 1;
+                        offset += 3 + readShort(classFile, offset + 1);
+                    }
+                    case 7 -> {
+                        classNameIndexes[classes++] = readShort(classFile, offset + 1);
+                        offset += 3;
+                    }
+                    case 8, 16, 19, 20 -> offset += 3;
+                    case 15 -> offset += 4;
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> offset += 5;
+                    case 5, 6 -> {
+                        // Longs and doubles take up two entries
+                        offset += 9;
+                        i++;
+                    }
+                    default -> {
+                        return List.of();
+                    }
+                }
+            }
+
+            var names = new ArrayList<String>(classes);
+            for (int i = 0; i < classes; i++) {
+                int index = classNameIndexes[i];
+                if (index <= 0 || index >= count || utf8Offsets[index] == 0) continue;
+                var name = elementClass(readUtf8(classFile, utf8Offsets[index]));
+                if (name != null) names.add(name.replace('/', '.'));
+            }
+            return names;
+        } catch (IndexOutOfBoundsException | IOException e) {
+            return List.of();
+        }
+    }
+
+    @Nullable
+    private static String elementClass(final String name) {
+        if (!name.startsWith("[")) return name;
+        int start = name.lastIndexOf('[') + 1;
+        // Arrays of primitives do not refer to any class
+        if (name.charAt(start) != 'L' || !name.endsWith(";")) return null;
+        return name.substring(start + 1, name.length() - 1);
+    }
+
+    private static String readUtf8(final ByteBuffer classFile, final int offset) throws IOException {
+        // Length and contents, as DataInput reads them
+        var utf8 = new byte[2 + readShort(classFile, offset)];
+        classFile.get(classFile.position() + offset, utf8);
+        for (int i = 2; i < utf8.length; i++) {
+            if (utf8[i] < 0) return new DataInputStream(new ByteArrayInputStream(utf8)).readUTF();
+        }
+        return new String(utf8, 2, utf8.length - 2, StandardCharsets.ISO_8859_1);
+    }
+
+    // Relative to the position, and big-endian whatever the order of the buffer
+    private static int readShort(final ByteBuffer bytes, final int offset) {
+        int index = bytes.position() + offset;
+        return ((bytes.get(index) & 0xFF) << 8) | (bytes.get(index + 1) & 0xFF);
+    }
+
+    private static int readInt(final ByteBuffer bytes, final int offset) {
+        return (readShort(bytes, offset) << 16) | readShort(bytes, offset + 2);
+    }
+}
@@ -0,0 +1,147 @@
+package cpw.mods.cl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in record of the classes a {@link ModuleClassLoader} defined during startup, in the order it defined them,
+ * so that the next launch can prefetch them before they are needed.
+ * Enabled by setting {@code securejarhandler.classLoadProfile} to a directory.
+ *
+ * <p>Every loader gets its own file, named after the loader. Unnamed loaders are not profiled,
+ * as nothing tells their files apart. Recording stops after {@value #MAX_CLASSES} classes,
+ * or when {@link ModuleClassLoader#saveClassLoadProfile()} is called, and the file is written then, or at shutdown.
+ * A profile that no longer matches the jars only costs some wasted prefetching: the bytes are read from the jars as usual.
+ */
+final class ClassLoadProfile {
+    private static final String PROPERTY = "securejarhandler.classLoadProfile";
+    private static final String HEADER = "# securejarhandler class load profile v1";
+    private static final int MAX_CLASSES = 65536;
+    // Profiles that are still recording, saved at shutdown if startup never finished
+    private static final Set<ClassLoadProfile> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (var profile : OPEN) {
+                profile.saveQuietly();
+            }
+        }, "SecureJarHandler class load profile"));
+    }
+
+    /**
+     * A class that was defined.
+     */
+    record Entry(String module, String className) {}
+
+    private final Path file;
+    private final List<Entry> previous;
+    private final Queue<Entry> recorded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recordedCount = new AtomicInteger();
+    private volatile boolean recording = true;
+
+    private ClassLoadProfile(Path file, List<Entry> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens the profile of a class loader, or returns {@code null} if profiling is not enabled or the loader has no name.
+     * A profile that cannot be read is treated as empty.
+     */
+    @Nullable
+    static ClassLoadProfile open(@Nullable String loaderName) {
+        var directory = System.getProperty(PROPERTY);
+        if (directory == null || directory.isEmpty() || loaderName == null) return null;
+
+        var file = Paths.get(directory).resolve(fileName(loaderName));
+        var previous = new ArrayList<Entry>();
+        try {
+            if (Files.isRegularFile(file)) {
+                var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                if (!lines.isEmpty() && HEADER.equals(lines.get(0))) {
+                    for (var line : lines.subList(1, lines.size())) {
+                        int tab = line.indexOf('\t');
+                        if (tab > 0) previous.add(new Entry(line.substring(0, tab), line.substring(tab + 1)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            previous.clear();
+        }
+        var profile = new ClassLoadProfile(file, List.copyOf(previous));
+        OPEN.add(profile);
+        return profile;
+    }
+
+    private static String fileName(String loaderName) {
+        return loaderName.replaceAll("[^A-Za-z0-9._-]", "_") + ".classes.txt";
+    }
+
+    /**
+     * {@return the classes recorded by the previous launch, in the order they were defined}
+     */
+    List<Entry> previous() {
+        return previous;
+    }
+
+    /**
+     * Records a class that was just defined, unless recording has stopped.
+     * The profile is written in the background once it is full.
+     */
+    void record(String module, String className) {
+        if (!recording) return;
+        int count = recordedCount.incrementAndGet();
+        if (count > MAX_CLASSES) {
+            recording = false;
+            // Only the first class past the limit writes it, and not on the thread defining classes
+            if (count == MAX_CLASSES + 1) Thread.startVirtualThread(this::saveQuietly);
+            return;
+        }
+        recorded.add(new Entry(module, className));
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException ignored) {
+            // The profile is only an optimization, next launch will just not prefetch
+        }
+    }
+
+    /**
+     * Stops recording and writes the profile, if anything was recorded.
+     */
+    void save() throws IOException {
+        recording = false;
+        if (!OPEN.remove(this) || recorded.isEmpty()) return;
+
+        var lines = new ArrayList<String>(recorded.size() + 1);
+        lines.add(HEADER);
+        for (var entry : recorded) {
+            lines.add(entry.module() + "\t" + entry.className());
+        }
+
+        Files.createDirectories(file.getParent());
+        // Write to a temporary file first, so that concurrent launches never see a partial profile
+        var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package cpw.mods.cl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads classes on background threads, ahead of the {@link ModuleClassLoader} asking for them,
+ * so that defining them only has to look the bytes up. Classes come from two sources:
+ * <ul>
+ *     <li>the {@link ClassLoadProfile} of the previous launch, read, verified and transformed in order;</li>
+ *     <li>if {@code securejarhandler.speculativePrefetch} is set, the classes named by the constant pool of each class
+ *     the loader defines, only read and verified, as a transformer must not see classes that may never be loaded.
+ *     They are queued for as many workers as the profile uses.</li>
+ * </ul>
+ *
+ * <p>With {@code securejarhandler.pipelinedTransform} set, speculation is enabled and transforms the classes too,
+ * so transformers run on the worker threads instead of behind the I/O of the defining thread.
+ * Like {@link ModuleClassLoader#preload preload}, workers do not hold the lock of a class while preparing it,
+ * as a transformer that loads a class whose lock the defining thread holds would deadlock with it.
+ * A thread defining a class only takes what a worker already stored and never waits for one,
+ * and a worker skips a class another thread is defining.
+ *
+ * <p>Prefetched bytes are held until their class is defined, up to a budget set with
+ * {@code securejarhandler.classLoadProfile.budget} in bytes when the loader is created, 64 MiB by default.
+ * The profile waits for the loader to catch up when the budget is used, and gives up
+ * if it does not within a few seconds, as the profile then no longer matches what is being loaded.
+ * Speculation never waits; it drops other speculated classes to make room instead.
+ */
+final class ClassPrefetcher {
+    private static final String SPECULATIVE = "securejarhandler.speculativePrefetch";
+    private static final String PIPELINED = "securejarhandler.pipelinedTransform";
+    private static final String BUDGET = "securejarhandler.classLoadProfile.budget";
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final long STALL_TIMEOUT_SECONDS = 5;
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ModuleClassLoader loader;
+    private final List<ClassLoadProfile.Entry> profile;
+    private final boolean speculative;
+    private final boolean pipelined;
+    private final Map<String, Prefetched> prefetched = new ConcurrentHashMap<>();
+    // Classes being read, so that two workers do not read the same one
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final int budgetBytes;
+    private final Semaphore budget;
+    // Referenced classes waiting for one of the speculation workers, of which there are at most THREADS
+    private final Queue<String> referenced = new ConcurrentLinkedQueue<>();
+    private final Semaphore speculationWorkers = new Semaphore(THREADS);
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean profileStopped;
+
+    private final LongAdder prefetchedClasses = new LongAdder();
+    private final LongAdder prefetchedBytes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder hitBytes = new LongAdder();
+    private final LongAdder wastedBytes = new LongAdder();
+
+    ClassPrefetcher(ModuleClassLoader loader, List<ClassLoadProfile.Entry> profile, boolean speculative, boolean pipelined) {
+        this.loader = loader;
+        this.profile = profile;
+        this.speculative = speculative || pipelined;
+        this.pipelined = pipelined;
+        this.budgetBytes = Integer.getInteger(BUDGET, 64 << 20);
+        this.budget = new Semaphore(budgetBytes);
+    }
+
+    /**
+     * {@return whether new loaders speculatively prefetch the classes referred to by those they define}
+     */
+    static boolean speculativeEnabled() {
+        return Boolean.getBoolean(SPECULATIVE);
+    }
+
+    /**
+     * {@return whether new loaders transform the classes they prefetch on the worker threads}
+     */
+    static boolean pipelinedEnabled() {
+        return Boolean.getBoolean(PIPELINED);
+    }
+
+    private record Prefetched(ModuleClassLoader.PreparedClass prepared, boolean speculated) {}
+
+    /**
+     * Starts prefetching the profile, in order, on a few background threads.
+     */
+    void start() {
+        if (profile.isEmpty()) return;
+        for (int i = 0; i < THREADS; i++) {
+            EXECUTOR.execute(this::prefetchProfile);
+        }
+    }
+
+    /**
+     * Stops prefetching the profile and drops what it prefetched and was not used yet.
+     */
+    void stopProfile() {
+        profileStopped = true;
+        prefetched.forEach((name, entry) -> {
+            if (!entry.speculated()) discard(name);
+        });
+    }
+
+    private void prefetchProfile() {
+        int index;
+        while (!profileStopped && (index = next.getAndIncrement()) < profile.size()) {
+            var entry = profile.get(index);
+            var name = entry.className();
+            var module = loader.prefetchableModule(name);
+            if (module == null || !module.name().equals(entry.module()) || prefetched.containsKey(name)) continue;
+            if (!startReading(name)) continue;
+            try {
+                var prepared = loader.prepareClass(module, name);
+                if (prepared != null && !store(name, prepared, false)) {
+                    stopProfile();
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Leave it to the loader, which reports the failure when it actually needs the class
+            } finally {
+                finishReading(name);
+            }
+        }
+    }
+
+    /**
+     * Reads the classes of this loader that a class just defined refers to, if speculation is enabled.
+     * The constant pool is parsed right away, so that the buffer can be reused afterwards,
+     * and the classes are queued for a bounded number of workers.
+     */
+    void prefetchReferences(ByteBuffer classFile) {
+        if (!speculative) return;
+        for (var name : ClassFileReferences.classNames(classFile)) {
+            if (loader.prefetchableModule(name) == null || prefetched.containsKey(name) || inFlight.contains(name)) continue;
+            referenced.add(name);
+        }
+        if (!referenced.isEmpty() && speculationWorkers.tryAcquire()) EXECUTOR.execute(this::prefetchReferenced);
+    }
+
+    private void prefetchReferenced() {
+        do {
+            String name;
+            while ((name = referenced.poll()) != null) {
+                // The class may have been defined or read since it was queued
+                var module = loader.prefetchableModule(name);
+                if (module == null || prefetched.containsKey(name)) continue;
+                if (!startReading(name)) continue;
+                try {
+                    var read = pipelined ? loader.prepareClass(module, name) : loader.readClass(module, name);
+                    if (read != null) store(name, read, true);
+                } catch (IOException | RuntimeException e) {
+                    // Leave it to the loader, which reports the failure when it actually needs the class
+                } finally {
+                    finishReading(name);
+                }
+            }
+            speculationWorkers.release();
+            // Names queued after the last poll, but before the release, found no free worker
+        } while (!referenced.isEmpty() && speculationWorkers.tryAcquire());
+    }
+
+    /**
+     * {@return whether the class is now being read by the caller, {@code false} if another worker is reading it
+     * or a thread is defining it}
+     */
+    private boolean startReading(String name) {
+        return !loader.classLoadingLock(name).isLocked() && inFlight.add(name);
+    }
+
+    private void finishReading(String name) {
+        inFlight.remove(name);
+    }
+
+    /**
+     * Holds the bytes of a class until it is defined. Speculated classes never wait for the budget.
+     * {@return {@code false} if waiting for the budget timed out}
+     */
+    private boolean store(String name, ModuleClassLoader.PreparedClass prepared, boolean speculated) {
+        boolean wait = !speculated;
+        int size = prepared.bytes().length;
+        prefetchedClasses.increment();
+        prefetchedBytes.add(size);
+        if (size > budgetBytes) {
+            wastedBytes.add(size);
+            return true;
+        }
+        if (!acquire(size, wait)) {
+            wastedBytes.add(size);
+            return !wait;
+        }
+        if (prefetched.putIfAbsent(name, new Prefetched(prepared, speculated)) != null) {
+            budget.release(size);
+            wastedBytes.add(size);
+            return true;
+        }
+        // The class may have been defined while it was being read, then nobody would take it
+        if ((wait && profileStopped) || loader.prefetchableModule(name) == null) discard(name);
+        return true;
+    }
+
+    private boolean acquire(int size, boolean wait) {
+        if (wait) {
+            try {
+                return budget.tryAcquire(size, STALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        while (!budget.tryAcquire(size)) {
+            if (!dropSpeculated()) return false;
+        }
+        return true;
+    }
+
+    private boolean dropSpeculated() {
+        for (var entry : prefetched.entrySet()) {
+            if (entry.getValue().speculated() && prefetched.remove(entry.getKey(), entry.getValue())) {
+                int size = entry.getValue().prepared().bytes().length;
+                budget.release(size);
+                wastedBytes.add(size);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@return the prefetched bytes of a class about to be defined, or {@code null} if no worker stored them yet}
+     */
+    @Nullable
+    ModuleClassLoader.PreparedClass take(String className) {
+        var entry = prefetched.remove(className);
+        if (entry == null) return null;
+        int size = entry.prepared().bytes().length;
+        budget.release(size);
+        hits.increment();
+        hitBytes.add(size);
+        return entry.prepared();
+    }
+
+    /**
+     * Drops the prefetched bytes of a class, if any, because it was defined without them.
+     */
+    void discard(String className) {
+        var entry = prefetched.remove(className);
+        if (entry != null) {
+            budget.release(entry.prepared().bytes().length);
+            wastedBytes.add(entry.prepared().bytes().length);
+        }
+    }
+
+    ModuleClassLoader.PrefetchStats stats() {
+        return new ModuleClassLoader.PrefetchStats(prefetchedClasses.sum(), prefetchedBytes.sum(), hits.sum(), hitBytes.sum(), wastedBytes.sum());
+    }
+}
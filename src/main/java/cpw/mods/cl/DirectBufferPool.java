@@ -0,0 +1,46 @@
+package cpw.mods.cl;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Direct buffers that classes are read into and defined from, reused so that reading a class allocates nothing.
+ *
+ * <p>Buffers are handed out by power-of-two capacity, at least 64 KiB, which fits nearly every class.
+ * Classes larger than 1 MiB get a heap buffer instead, which is never pooled.
+ * Up to two buffers per processor are kept; the rest are left to the garbage collector.
+ */
+final class DirectBufferPool {
+    private static final int MIN_CAPACITY = 64 << 10;
+    private static final int MAX_POOLED_CAPACITY = 1 << 20;
+    private static final int MAX_BUFFERS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * {@return a cleared buffer of at least the given capacity}
+     */
+    ByteBuffer acquire(int capacity) {
+        var buffer = free.poll();
+        if (buffer != null) {
+            size.decrementAndGet();
+            if (buffer.capacity() >= capacity) return buffer.clear();
+        }
+        if (capacity > MAX_POOLED_CAPACITY) return ByteBuffer.allocate(capacity);
+        return ByteBuffer.allocateDirect(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1));
+    }
+
+    /**
+     * Returns a buffer to the pool, once nothing refers to its contents anymore.
+     */
+    void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() > MAX_POOLED_CAPACITY) return;
+        // Racing threads can overshoot the bound by a few buffers, which does not matter
+        if (size.get() >= MAX_BUFFERS) return;
+        size.incrementAndGet();
+        free.offer(buffer);
+    }
+}
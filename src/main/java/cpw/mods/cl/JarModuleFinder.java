@@ -23,10 +23,10 @@ public class JarModuleFinder implements ModuleFinder {
     JarModuleFinder(final SecureJar... jars) {
         this.moduleReferenceMap = Arrays.stream(jars)
                 // Computing the module descriptor can be slow so do it in parallel!
-                // Jars are not thread safe internally, but they are independent, so this is safe.
+                // Jars are independent, and their lazily computed data is thread-safe, so this is safe.
                 .parallel()
                 // Note: Collectors.toMap() works fine with parallel streams.
-                .collect(Collectors.toMap(jar -> jar.moduleDataProvider().name(), jar -> new JarModuleReference(jar.moduleDataProvider()), (r1, r2) -> r1));
+                .collect(Collectors.toMap(jar -> jar.moduleDataProvider().name(), JarModuleReference::new, (r1, r2) -> r1));
     }
 
     @Override
@@ -45,10 +45,12 @@ public class JarModuleFinder implements ModuleFinder {
 
     static class JarModuleReference extends ModuleReference {
         private final SecureJar.ModuleDataProvider jar;
+        private final SecureJar secureJar;
 
-        JarModuleReference(final SecureJar.ModuleDataProvider jar) {
-            super(jar.descriptor(), jar.uri());
-            this.jar = jar;
+        JarModuleReference(final SecureJar secureJar) {
+            super(secureJar.moduleDataProvider().descriptor(), secureJar.moduleDataProvider().uri());
+            this.jar = secureJar.moduleDataProvider();
+            this.secureJar = secureJar;
         }
 
         @Override
@@ -59,6 +61,10 @@ public class JarModuleFinder implements ModuleFinder {
         public SecureJar.ModuleDataProvider jar() {
             return this.jar;
         }
+
+        SecureJar secureJar() {
+            return this.secureJar;
+        }
     }
 
     static class JarModuleReader implements ModuleReader {
@@ -0,0 +1,117 @@
+package cpw.mods.cl;
+
+import cpw.mods.jarhandling.SecureJar;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.module.ModuleReader;
+import java.net.URL;
+import java.security.AllPermission;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.Permissions;
+import java.security.ProtectionDomain;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * A module that a {@link ModuleClassLoader} defines classes from, with everything needed to do so
+ * in a single lookup: its reference, a reader kept open for the lifetime of the loader, and its jar.
+ * Also holds the protection domains and package attributes of its classes.
+ *
+ * <p>Owned by its class loader, so it is collected together with the loader.
+ */
+final class LoadedModule {
+    private final JarModuleFinder.JarModuleReference reference;
+    private final ModuleReader reader;
+    private final ClassLoader loader;
+    @Nullable
+    private final URL location;
+    // Most modules are unsigned, so that domain is created up front
+    private final ProtectionDomain unsignedDomain;
+    // CodeSigner implements equals, so equal signer arrays share a domain
+    private final Map<List<CodeSigner>, ProtectionDomain> signedDomains = new ConcurrentHashMap<>();
+    @Nullable
+    private final Manifest manifest;
+    // Spec and impl attributes of the main section, used by every package without a section of its own
+    private final PackageAttributes mainAttributes;
+
+    LoadedModule(ClassLoader loader, JarModuleFinder.JarModuleReference reference, ModuleReader reader, @Nullable URL location) {
+        this.reference = reference;
+        this.reader = reader;
+        this.loader = loader;
+        this.location = location;
+        this.unsignedDomain = createProtectionDomain(null);
+        this.manifest = reference.jar().getManifest();
+        this.mainAttributes = manifest == null ? PackageAttributes.NONE : PackageAttributes.NONE.with(manifest.getMainAttributes());
+    }
+
+    String name() {
+        return reference.descriptor().name();
+    }
+
+    JarModuleFinder.JarModuleReference reference() {
+        return reference;
+    }
+
+    ModuleReader reader() {
+        return reader;
+    }
+
+    SecureJar.ModuleDataProvider jar() {
+        return reference.jar();
+    }
+
+    /**
+     * Spec and impl attributes that a package is defined with.
+     */
+    record PackageAttributes(@Nullable String specTitle, @Nullable String specVersion, @Nullable String specVendor,
+                             @Nullable String implTitle, @Nullable String implVersion, @Nullable String implVendor) {
+        static final PackageAttributes NONE = new PackageAttributes(null, null, null, null, null, null);
+
+        /**
+         * {@return these attributes, with the given ones taking precedence}
+         */
+        PackageAttributes with(@Nullable Attributes attr) {
+            if (attr == null) return this;
+            return new PackageAttributes(
+                    value(attr, Attributes.Name.SPECIFICATION_TITLE, specTitle),
+                    value(attr, Attributes.Name.SPECIFICATION_VERSION, specVersion),
+                    value(attr, Attributes.Name.SPECIFICATION_VENDOR, specVendor),
+                    value(attr, Attributes.Name.IMPLEMENTATION_TITLE, implTitle),
+                    value(attr, Attributes.Name.IMPLEMENTATION_VERSION, implVersion),
+                    value(attr, Attributes.Name.IMPLEMENTATION_VENDOR, implVendor));
+        }
+
+        @Nullable
+        private static String value(Attributes attr, Attributes.Name name, @Nullable String fallback) {
+            var value = attr.getValue(name);
+            return value != null ? value : fallback;
+        }
+    }
+
+    /**
+     * {@return the attributes of a package of this module, from its manifest section or else the main section}
+     */
+    PackageAttributes packageAttributes(String packageName) {
+        // Packages are directories, and can't be signed, so use raw attributes instead of signed.
+        if (manifest == null) return mainAttributes;
+        return mainAttributes.with(manifest.getAttributes(packageName.replace('.', '/').concat("/")));
+    }
+
+    /**
+     * {@return the protection domain for classes of this module with the given signers}
+     */
+    ProtectionDomain protectionDomain(@Nullable CodeSigner[] signers) {
+        if (signers == null || signers.length == 0) return unsignedDomain;
+        return signedDomains.computeIfAbsent(List.of(signers), k -> createProtectionDomain(signers));
+    }
+
+    private ProtectionDomain createProtectionDomain(@Nullable CodeSigner[] signers) {
+        Permissions perms = new Permissions();
+        perms.add(new AllPermission());
+        return new ProtectionDomain(new CodeSource(location, signers), perms, loader, null);
+    }
+}
@@ -0,0 +1,63 @@
+package cpw.mods.cl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded set of names that a {@link ModuleClassLoader} looked for and did not find,
+ * in its own modules or by delegating to other loaders.
+ *
+ * <p>The jars of a loader are not expected to change, so the misses of its own modules are never dropped.
+ * Jars backed by a directory, as in a development environment, can change though,
+ * so a loader with such a jar does not cache any misses. Delegated misses are dropped when the fallback loader is replaced.
+ * Once full, an arbitrary name is dropped for each new one.
+ * The size can be set with {@code securejarhandler.missCacheSize}, 0 disables the cache.
+ */
+final class MissCache {
+    private static final int DEFAULT_SIZE = 4096;
+    private static final int MAX_SIZE = maxSize(System.getProperty("securejarhandler.missCacheSize"));
+
+    private final Set<String> misses = ConcurrentHashMap.newKeySet();
+    private final int maxSize;
+
+    MissCache() {
+        this(MAX_SIZE);
+    }
+
+    MissCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private static int maxSize(@Nullable String property) {
+        if (property == null) return DEFAULT_SIZE;
+        try {
+            return Integer.parseInt(property.trim());
+        } catch (NumberFormatException e) {
+            // A cache of the default size is better than a loader that fails to initialize
+            return DEFAULT_SIZE;
+        }
+    }
+
+    boolean contains(String name) {
+        return misses.contains(name);
+    }
+
+    void clear() {
+        misses.clear();
+    }
+
+    void add(String name) {
+        if (maxSize <= 0 || misses.contains(name)) return;
+        // Racing threads can overshoot the bound by a few names, which does not matter
+        if (misses.size() >= maxSize) {
+            var iterator = misses.iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        misses.add(name);
+    }
+}
@@ -1,6 +1,8 @@
 package cpw.mods.cl;
 
+import cpw.mods.jarhandling.SecureJar;
 import cpw.mods.util.LambdaExceptionUtils;
+import cpw.mods.util.Lazy;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
@@ -14,15 +16,29 @@ import java.lang.module.*;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.CodeSigner;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class ModuleClassLoader extends ClassLoader {
+    private static final String CLASS_SUFFIX = ".class";
+    private static final byte[] EMPTY_BYTES = new byte[0];
+    // Shared by all loaders, as buffers are only held while a class is read and defined
+    private static final DirectBufferPool CLASS_BUFFERS = new DirectBufferPool();
+
     static {
         ClassLoader.registerAsParallelCapable();
         URL.setURLStreamHandlerFactory(ModularURLHandler.INSTANCE);
@@ -64,9 +80,43 @@ public class ModuleClassLoader extends ClassLoader {
 
     private final Configuration configuration;
     private final Map<String, JarModuleFinder.JarModuleReference> resolvedRoots;
-    private final Map<String, ResolvedModule> packageLookup;
+    // Straight from a package to the reader and jar of its module
+    private final Map<String, LoadedModule> packageLookup;
     private final Map<String, ClassLoader> parentLoaders;
     private ClassLoader fallbackClassLoader;
+    // Subclasses that read class bytes themselves keep separate read and verify passes
+    private final boolean overridesGetClassBytes = overrides(getClass(), "getClassBytes", ModuleReader.class, ModuleReference.class, String.class);
+    // Subclasses that find resources themselves get their resource streams through those URLs
+    private final boolean overridesResourceLookup = overrides(getClass(), "getResource", String.class)
+            || overrides(getClass(), "findResource", String.class, String.class);
+    // Without a transformer, classes are defined straight from the buffer they were read into
+    private final boolean overridesTransform = overrides(getClass(), "maybeTransformClassBytes", byte[].class, String.class, String.class);
+    // Reader, jar, protection domains and package attributes of each module in resolvedRoots, by module name
+    private final Map<String, LoadedModule> loadedModules;
+    // Resources outside of any package, listed the first time one is looked for
+    private final Lazy<ResourceIndex> resourceIndex = Lazy.of(this::buildResourceIndex);
+    // Per class name, in place of the monitors of getClassLoadingLock. Waiting on a monitor held across
+    // reading and defining a class would pin the carrier thread of a virtual thread.
+    private final Map<String, ReentrantLock> classLoadingLocks = new ConcurrentHashMap<>();
+    // Classes and resources of our own packages and resource index that the jars do not have.
+    // Disabled if a jar is backed by a directory, which can gain classes and resources that a cached miss would hide.
+    private final MissCache classMisses;
+    private final MissCache resourceMisses;
+    // Classes of other packages that the parent loaders or the fallback loader did not have.
+    // Those loaders throw a new exception for each miss, after searching the whole class path in the case of the fallback.
+    private final MissCache delegatedMisses;
+    // Classes prepared ahead of time on other threads, taken when they are defined
+    private final Map<String, PreparedClass> preparedClasses = new ConcurrentHashMap<>();
+    // Classes defined during startup, recorded for the next launch, if enabled
+    @Nullable
+    private final ClassLoadProfile classLoadProfile;
+    // Prefetches the classes recorded by the previous launch, started by the first class this loader defines,
+    // and those referred to by the classes it defines, if enabled
+    @Nullable
+    private final ClassPrefetcher prefetcher;
+    private final AtomicBoolean prefetcherStarted = new AtomicBoolean();
+    // Transformed bytes of earlier launches, opened once a subclass can tell its transformer version
+    private final Lazy<TransformCache> transformCache = Lazy.of(() -> TransformCache.open(getName(), transformerVersion()));
 
     public ModuleClassLoader(final String name, final Configuration configuration, final List<ModuleLayer> parentLayers) {
         this(name, configuration, parentLayers, null);
@@ -91,13 +141,21 @@ public class ModuleClassLoader extends ClassLoader {
         this.fallbackClassLoader = Objects.requireNonNullElse(parentLoader, ClassLoader.getPlatformClassLoader());
         this.configuration = configuration;
         this.packageLookup = new HashMap<>();
+        this.loadedModules = new HashMap<>();
         this.resolvedRoots = configuration.modules().stream()
                 .filter(m -> m.reference() instanceof JarModuleFinder.JarModuleReference)
                 .peek(mod -> {
-                    // Populate packageLookup at the same time, for speed
-                    mod.reference().descriptor().packages().forEach(pk->this.packageLookup.put(pk, mod));
+                    // Populate packageLookup and loadedModules at the same time, for speed
+                    var ref = (JarModuleFinder.JarModuleReference) mod.reference();
+                    var module = new LoadedModule(this, ref, new JarModuleFinder.JarModuleReader(ref.jar()), toURL(ref.location()));
+                    this.loadedModules.put(module.name(), module);
+                    ref.descriptor().packages().forEach(pk->this.packageLookup.put(pk, module));
                 })
                 .collect(Collectors.toMap(mod -> mod.reference().descriptor().name(), mod -> (JarModuleFinder.JarModuleReference)mod.reference()));
+        var cacheMisses = this.resolvedRoots.values().stream().noneMatch(ref -> isDirectory(ref.secureJar().getPrimaryPath()));
+        this.classMisses = cacheMisses ? new MissCache() : new MissCache(0);
+        this.resourceMisses = cacheMisses ? new MissCache() : new MissCache(0);
+        this.delegatedMisses = cacheMisses ? new MissCache() : new MissCache(0);
 
         this.parentLoaders = new HashMap<>();
         Set<ModuleDescriptor> processedAutomaticDescriptors = new HashSet<>();
@@ -139,6 +197,18 @@ public class ModuleClassLoader extends ClassLoader {
         // to make sure ServiceLoader can find providers defined in parent layers
         Set<ModuleLayer> visitedLayers = new HashSet<>();
         parentLayers.forEach(p -> forLayerAndParents(p, visitedLayers, l -> bindToLayer(this, l)));
+
+        this.classLoadProfile = ClassLoadProfile.open(name);
+        var profile = classLoadProfile == null ? List.<ClassLoadProfile.Entry>of() : classLoadProfile.previous();
+        // Subclasses that read class bytes themselves would not see speculative reads, but do see pipelined ones
+        var speculative = ClassPrefetcher.speculativeEnabled() && !overridesGetClassBytes;
+        var pipelined = ClassPrefetcher.pipelinedEnabled();
+        this.prefetcher = profile.isEmpty() && !speculative && !pipelined ? null : new ClassPrefetcher(this, profile, speculative, pipelined);
+    }
+
+    // Jars without a path or of other file systems, such as virtual jars, are never backed by a directory that can change
+    private static boolean isDirectory(@Nullable Path path) {
+        return path != null && path.getFileSystem() == FileSystems.getDefault() && Files.isDirectory(path);
     }
 
     private static void forLayerAndParents(ModuleLayer layer, Set<ModuleLayer> visited, Consumer<ModuleLayer> operation) {
@@ -171,58 +241,313 @@ public class ModuleClassLoader extends ClassLoader {
         return null;
     }
 
-    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
-    private static Stream<InputStream> closeHandler(Optional<InputStream> supplier) {
-        final var is = supplier.orElse(null);
-        return Optional.ofNullable(is).stream().onClose(() -> Optional.ofNullable(is).ifPresent(LambdaExceptionUtils.rethrowConsumer(InputStream::close)));
+    /**
+     * {@return the entry name of a class, e.g. {@code a/b/C.class} for {@code a.b.C}}
+     */
+    static String classFileName(final String name) {
+        // Converted in one array, rather than through replace and concat
+        var chars = new char[name.length() + CLASS_SUFFIX.length()];
+        name.getChars(0, name.length(), chars, 0);
+        for (int i = 0; i < name.length(); i++) {
+            if (chars[i] == '.') chars[i] = '/';
+        }
+        CLASS_SUFFIX.getChars(0, CLASS_SUFFIX.length(), chars, name.length());
+        return new String(chars);
     }
+
     protected byte[] getClassBytes(final ModuleReader reader, final ModuleReference ref, final String name) {
-        var cname = name.replace('.','/')+".class";
+        var cname = classFileName(name);
+        if (ref instanceof JarModuleFinder.JarModuleReference jarRef) {
+            // Read into an array of the exact size of the entry
+            return jarRef.jar().readFile(cname).orElse(EMPTY_BYTES);
+        }
+        return LambdaExceptionUtils.uncheck(() -> {
+            var is = reader.open(cname).orElse(null);
+            if (is == null) return EMPTY_BYTES;
+            try (is) {
+                return is.readAllBytes();
+            }
+        });
+    }
 
-        try (var istream = closeHandler(Optional.of(reader).flatMap(LambdaExceptionUtils.rethrowFunction(r->r.open(cname))))) {
-            return istream.map(LambdaExceptionUtils.rethrowFunction(InputStream::readAllBytes))
-                    .findFirst()
-                    .orElseGet(()->new byte[0]);
+    // IOException can be thrown sneakily by the jar
+    private Class<?> readerToClass(final LoadedModule module, final String name) throws IOException {
+        var prepared = preparedClasses.remove(name);
+        if (prepared == null && prefetcher != null) prepared = prefetcher.take(name);
+        if (prepared == null && !this.overridesGetClassBytes && !this.overridesTransform) {
+            // Read into a pooled direct buffer that the JVM defines the class from, without an array on the heap
+            if (classMisses.contains(name)) return null;
+            var read = module.jar().readVerified(classFileName(name), CLASS_BUFFERS::acquire).orElse(null);
+            if (read == null) {
+                classMisses.add(name);
+                return null;
+            }
+            try {
+                return read.buffer().hasRemaining() ? defineModuleClass(module, name, read.buffer(), read.signers()) : null;
+            } finally {
+                CLASS_BUFFERS.release(read.buffer());
+            }
         }
+        if (prepared == null) prepared = prepareClass(module, name);
+        else if (!prepared.transformed()) prepared = transformClass(name, prepared);
+        if (prepared == null) return null;
+        return defineModuleClass(module, name, ByteBuffer.wrap(prepared.bytes()), prepared.signers());
     }
 
-    private Class<?> readerToClass(final ModuleReader reader, final ModuleReference ref, final String name) {
-        var bytes = maybeTransformClassBytes(getClassBytes(reader, ref, name), name, null);
-        if (bytes.length == 0) return null;
-        var cname = name.replace('.','/')+".class";
-        var modroot = this.resolvedRoots.get(ref.descriptor().name());
-        ProtectionDomainHelper.tryDefinePackage(this, name, modroot.jar().getManifest(), t->modroot.jar().getManifest().getAttributes(t), this::definePackage); // Packages are dirctories, and can't be signed, so use raw attributes instead of signed.
-        var cs = ProtectionDomainHelper.createCodeSource(toURL(ref.location()), modroot.jar().verifyAndGetSigners(cname, bytes));
-        var cls = defineClass(name, bytes, 0, bytes.length, ProtectionDomainHelper.createProtectionDomain(cs, this));
+    private Class<?> defineModuleClass(final LoadedModule module, final String name, final ByteBuffer bytes, @Nullable final CodeSigner[] signers) {
+        definePackage(module, name.substring(0, name.lastIndexOf('.')));
+        // Defining the class consumes the buffer
+        var classFile = bytes.duplicate();
+        var cls = defineClass(name, bytes, module.protectionDomain(signers));
         ProtectionDomainHelper.trySetPackageModule(cls.getPackage(), cls.getModule());
+        if (prefetcher != null) {
+            // A worker may have finished the class while we prepared it ourselves
+            prefetcher.discard(name);
+            prefetcher.prefetchReferences(classFile);
+        }
+        if (classLoadProfile != null) classLoadProfile.record(module.name(), name);
         return cls;
     }
 
+    /**
+     * The bytes of a class, ready to be defined once transformed.
+     *
+     * @param signers     the signers if the bytes could be verified, or {@code null} otherwise
+     * @param transformed whether the bytes went through {@link #maybeTransformClassBytes} already
+     */
+    record PreparedClass(byte[] bytes, @Nullable CodeSigner[] signers, boolean transformed) {}
+
+    /**
+     * Reads, verifies and transforms the bytes of a class, which can happen on any thread.
+     * {@return the prepared class, or {@code null} if there is no such class}
+     */
+    @Nullable
+    PreparedClass prepareClass(final LoadedModule module, final String name) throws IOException {
+        if (this.overridesGetClassBytes) {
+            var bytes = transformClassBytes(getClassBytes(module.reader(), module.reference(), name), name);
+            if (bytes.length == 0) return null;
+            return new PreparedClass(bytes, module.jar().verifyAndGetSigners(classFileName(name), bytes), true);
+        }
+        // A known miss still goes to the transformers, which may create the class from nothing
+        return transformClass(name, readClass(module, name));
+    }
+
+    /**
+     * Reads and verifies the bytes of a class in a single pass, without transforming them.
+     * Only for loaders that do not override {@link #getClassBytes}.
+     * {@return the class, or {@code null} if the jar does not have it}
+     */
+    @Nullable
+    PreparedClass readClass(final LoadedModule module, final String name) throws IOException {
+        if (classMisses.contains(name)) return null;
+        var read = module.jar().readVerified(classFileName(name)).orElse(null);
+        if (read == null) {
+            classMisses.add(name);
+            return null;
+        }
+        return new PreparedClass(read.bytes(), read.signers(), false);
+    }
+
+    /**
+     * {@return the class transformed, or {@code null} if there is no such class}
+     *
+     * @param read the class as read from the jar, or {@code null} if the jar does not have it
+     */
+    @Nullable
+    private PreparedClass transformClass(final String name, @Nullable final PreparedClass read) {
+        var original = read == null ? EMPTY_BYTES : read.bytes();
+        var bytes = transformClassBytes(original, name);
+        if (bytes.length == 0) return null;
+        // The signers vouch for the bytes that were read, not for whatever a transformer turned them into
+        var signers = read != null && read.signers() != null && (bytes == original || Arrays.equals(bytes, original)) ? read.signers() : null;
+        return new PreparedClass(bytes, signers, true);
+    }
+
+    /**
+     * How long {@link #preload} took for one class.
+     *
+     * @param className    the name of the class
+     * @param loadedClass  the class, or {@code null} if it could not be loaded
+     * @param prepareNanos the time spent reading, verifying and transforming its bytes on the executor,
+     *                     or 0 if that did not happen there, e.g. because another loader has the class
+     * @param defineNanos  the time spent loading it afterwards, including its superclasses that were not loaded yet
+     */
+    public record PreloadTiming(String className, @Nullable Class<?> loadedClass, long prepareNanos, long defineNanos) {}
+
+    /**
+     * Loads classes ahead of time. Their bytes are read, verified and transformed in parallel on the executor,
+     * then the classes are loaded in the given order on the calling thread, as {@link #loadClass(String)} would.
+     * Loading a class still takes its lock, and still loads its superclasses first.
+     *
+     * <p>Classes that cannot be loaded are skipped; whatever made them fail will happen again when they are needed.
+     *
+     * @return how long each class took, in the given order
+     */
+    public List<PreloadTiming> preload(final Collection<String> classNames, final Executor executor) {
+        var names = List.copyOf(new LinkedHashSet<>(classNames));
+        var prepareNanos = new ConcurrentHashMap<String, Long>();
+        var futures = new ArrayList<CompletableFuture<Void>>(names.size());
+        for (var name : names) {
+            var index = name.lastIndexOf('.');
+            var module = index < 0 ? null : this.packageLookup.get(name.substring(0, index));
+            if (module == null || findLoadedClass(name) != null) continue;
+            futures.add(CompletableFuture.runAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    var prepared = prepareClass(module, name);
+                    if (prepared != null) preparedClasses.putIfAbsent(name, prepared);
+                } catch (IOException | RuntimeException ignored) {
+                    // Left for loadClass to report, when the class is actually needed
+                }
+                prepareNanos.put(name, System.nanoTime() - start);
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        var timings = new ArrayList<PreloadTiming>(names.size());
+        try {
+            for (var name : names) {
+                long start = System.nanoTime();
+                Class<?> cls;
+                try {
+                    cls = loadClass(name);
+                } catch (ClassNotFoundException | LinkageError e) {
+                    cls = null;
+                }
+                timings.add(new PreloadTiming(name, cls, prepareNanos.getOrDefault(name, 0L), System.nanoTime() - start));
+            }
+        } finally {
+            // Whatever was not used, because another thread loaded the class first
+            names.forEach(preparedClasses::remove);
+        }
+        return timings;
+    }
+
+    /**
+     * {@return the module of a class to prefetch, if this loader has it and has not defined it yet, or {@code null}}
+     */
+    @Nullable
+    LoadedModule prefetchableModule(final String className) {
+        var index = className.lastIndexOf('.');
+        var module = index < 0 ? null : this.packageLookup.get(className.substring(0, index));
+        return module != null && findLoadedClass(className) == null ? module : null;
+    }
+
+    /**
+     * What reading classes ahead of time, from the class load profile or speculatively, achieved so far.
+     *
+     * @param prefetchedClasses the number of classes read ahead of time
+     * @param prefetchedBytes   their size
+     * @param hits              the number of classes defined from bytes read ahead of time
+     * @param hitBytes          their size
+     * @param wastedBytes       the bytes read ahead of time and dropped, because their class was defined without them,
+     *                          or did not fit the budget
+     */
+    public record PrefetchStats(long prefetchedClasses, long prefetchedBytes, long hits, long hitBytes, long wastedBytes) {
+        /**
+         * {@return the share of classes read ahead of time that were defined from those bytes}
+         */
+        public double hitRate() {
+            return prefetchedClasses == 0 ? 0 : (double) hits / prefetchedClasses;
+        }
+    }
+
+    /**
+     * {@return what reading classes ahead of time achieved so far, all 0 unless it is enabled}
+     */
+    public PrefetchStats prefetchStats() {
+        return prefetcher == null ? new PrefetchStats(0, 0, 0, 0, 0) : prefetcher.stats();
+    }
+
+    /**
+     * Stops recording the classes this loader defines and writes them to its class load profile,
+     * for the next launch to prefetch. Call it once startup is done;
+     * otherwise the profile is written at shutdown, or once it is full.
+     * Does nothing unless {@code securejarhandler.classLoadProfile} is set and this loader has a name.
+     */
+    public void saveClassLoadProfile() throws IOException {
+        if (prefetcher != null) prefetcher.stopProfile();
+        if (classLoadProfile != null) classLoadProfile.save();
+    }
+
+    private static boolean overrides(Class<?> cls, String method, Class<?>... parameterTypes) {
+        for (var c = cls; c != ModuleClassLoader.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(method, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        return false;
+    }
+
     protected byte[] maybeTransformClassBytes(final byte[] bytes, final String name, final String context) {
         return bytes;
     }
 
+    /**
+     * {@return a string that changes whenever {@link #maybeTransformClassBytes} may return different bytes for the same input,
+     * e.g. a hash of the transformers and their configuration, or {@code null} if its results must not be cached}
+     * With {@code securejarhandler.transformCache} set to a directory, the classes this loader defines are then
+     * transformed once, and later launches read the result from the cache.
+     * Called once, the first time this loader defines a class.
+     */
+    @Nullable
+    protected String transformerVersion() {
+        return null;
+    }
+
+    /**
+     * Transforms the bytes of a class about to be defined, or takes them from the transform cache.
+     */
+    private byte[] transformClassBytes(final byte[] bytes, final String name) {
+        var cache = transformCache.get();
+        if (cache == null) return maybeTransformClassBytes(bytes, name, null);
+        var key = cache.key(name, bytes);
+        var cached = cache.get(key, bytes);
+        if (cached != null) return cached;
+        var transformed = maybeTransformClassBytes(bytes, name, null);
+        cache.put(key, bytes, transformed);
+        return transformed;
+    }
+
     @Override
     protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
-        synchronized (getClassLoadingLock(name)) {
-            var c = findLoadedClass(name);
-            if (c == null) {
-                var index = name.lastIndexOf('.');
-                if (index >= 0) {
-                    final var pname = name.substring(0, index);
-                    if (this.packageLookup.containsKey(pname)) {
-                        c = findClass(this.packageLookup.get(pname).name(), name);
-                    } else {
-                        c = this.parentLoaders.getOrDefault(pname, fallbackClassLoader).loadClass(name);
-                    }
+        var c = findLoadedClass(name);
+        if (c == null) {
+            var index = name.lastIndexOf('.');
+            if (index >= 0) {
+                final var pname = name.substring(0, index);
+                if (this.packageLookup.containsKey(pname)) {
+                    // findClass takes the lock of the class, other loaders take their own
+                    c = findClass(this.packageLookup.get(pname).name(), name);
+                } else {
+                    c = loadDelegatedClass(pname, name);
                 }
             }
-            if (c == null) throw new ClassNotFoundException(name);
-            if (resolve) resolveClass(c);
-            return c;
+        }
+        if (c == null) throw new ClassNotFoundException(name);
+        if (resolve) resolveClass(c);
+        return c;
+    }
+
+    private Class<?> loadDelegatedClass(final String pname, final String name) throws ClassNotFoundException {
+        if (delegatedMisses.contains(name)) throw new ClassNotFoundException(name);
+        try {
+            return this.parentLoaders.getOrDefault(pname, fallbackClassLoader).loadClass(name);
+        } catch (ClassNotFoundException e) {
+            delegatedMisses.add(name);
+            throw e;
         }
     }
 
+    /**
+     * {@return the lock that is held while a class of this loader is read and defined}
+     */
+    ReentrantLock classLoadingLock(final String name) {
+        return classLoadingLocks.computeIfAbsent(name, n -> new ReentrantLock());
+    }
+
     @Override
     protected Class<?> findClass(final String name) throws ClassNotFoundException {
         final String mname = classNameToModuleName(name);
@@ -235,11 +560,23 @@ public class ModuleClassLoader extends ClassLoader {
 
     protected String classNameToModuleName(final String name) {
         final var pname = name.substring(0, name.lastIndexOf('.'));
-        return Optional.ofNullable(this.packageLookup.get(pname)).map(ResolvedModule::name).orElse(null);
+        var module = this.packageLookup.get(pname);
+        return module != null ? module.name() : null;
     }
 
-    private Package definePackage(final String[] args) {
-        return definePackage(args[0], args[1], args[2], args[3], args[4], args[5], args[6], null);
+    private Package definePackage(final LoadedModule module, final String pname) {
+        var pkg = getDefinedPackage(pname);
+        if (pkg != null) return pkg;
+        // No lock: the packages of a class loader are a concurrent map, and if another thread defines the package first,
+        // definePackage throws and we use theirs. Both would have been defined from the same attributes.
+        var attr = module.packageAttributes(pname);
+        try {
+            return definePackage(pname, attr.specTitle(), attr.specVersion(), attr.specVendor(), attr.implTitle(), attr.implVersion(), attr.implVendor(), null);
+        } catch (IllegalArgumentException e) {
+            pkg = getDefinedPackage(pname);
+            if (pkg == null) throw e;
+            return pkg;
+        }
     }
 
     @Override
@@ -265,26 +602,66 @@ public class ModuleClassLoader extends ClassLoader {
         }
     }
 
+    @Override
+    public InputStream getResourceAsStream(final String name) {
+        Objects.requireNonNull(name);
+        if (this.overridesResourceLookup) return super.getResourceAsStream(name);
+        try {
+            var is = openResource(name);
+            return is != null ? is : fallbackClassLoader.getResourceAsStream(name);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens the same resource that {@link #getResource} finds in our modules, straight from its jar rather than through its URL.
+     */
+    @Nullable
+    private InputStream openResource(final String name) throws IOException { // IOException can be thrown sneakily by the jar
+        if (resourceMisses.contains(name)) return null;
+        var module = packageLookup.get(resourcePackage(name));
+        var candidates = module != null ? List.of(module) : resourceIndex.get().candidates(name);
+        for (var candidate : candidates) {
+            var is = candidate.jar().open(name);
+            if (is.isPresent()) return is.get();
+        }
+        resourceMisses.add(name);
+        return null;
+    }
+
     @Override
     public Enumeration<URL> getResources(final String name) throws IOException {
         return Collections.enumeration(findResourceList(name));
     }
 
+    private ResourceIndex buildResourceIndex() {
+        // Same order as looking through resolvedRoots
+        return ResourceIndex.build(this.resolvedRoots.keySet().stream().map(this.loadedModules::get).toList());
+    }
+
     private List<URL> findResourceList(final String name) throws IOException {
-        var idx = name.lastIndexOf('/');
-        var pkgname =  (idx == -1 || idx==name.length()-1) ? "" : name.substring(0,idx).replace('/','.');
-        var module = packageLookup.get(pkgname);
+        if (resourceMisses.contains(name)) return List.of();
+        var module = packageLookup.get(resourcePackage(name));
+        List<URL> found;
         if (module != null) {
             var res = findResource(module.name(), name);
-            return res != null ? List.of(res): List.of();
+            found = res != null ? List.of(res): List.of();
         } else {
-            return resolvedRoots.values().stream()
-                    .map(JarModuleFinder.JarModuleReference::jar)
+            found = resourceIndex.get().candidates(name).stream()
+                    .map(LoadedModule::jar)
                     .map(jar->jar.findFile(name))
                     .map(ModuleClassLoader::toURL)
                     .filter(Objects::nonNull)
                     .toList();
         }
+        if (found.isEmpty()) resourceMisses.add(name);
+        return found;
+    }
+
+    private static String resourcePackage(final String name) {
+        var idx = name.lastIndexOf('/');
+        return (idx == -1 || idx==name.length()-1) ? "" : name.substring(0,idx).replace('/','.');
     }
 
     @Override
@@ -294,14 +671,32 @@ public class ModuleClassLoader extends ClassLoader {
 
     @Override
     protected Class<?> findClass(final String moduleName, final String name) {
+        var module = loadedModules.get(moduleName);
+        if (module == null) return null;
+        // Not started in the constructor, as a subclass transforming the prefetched classes is not initialized yet
+        if (prefetcher != null && !prefetcherStarted.get() && prefetcherStarted.compareAndSet(false, true)) {
+            prefetcher.start();
+        }
+        var lock = classLoadingLock(name);
+        lock.lock();
         try {
-            return loadFromModule(moduleName, (reader, ref) -> this.readerToClass(reader, ref, name));
+            // Another thread may have defined it while we waited
+            var c = findLoadedClass(name);
+            if (c != null) return c;
+            return readerToClass(module, name);
         } catch (IOException e) {
             return null;
+        } finally {
+            lock.unlock();
         }
     }
 
     protected <T> T loadFromModule(final String moduleName, BiFunction<ModuleReader, ModuleReference, T> lookup) throws IOException {
+        var loaded = loadedModules.get(moduleName);
+        if (loaded != null) {
+            // The reader of a jar module holds no resources, so it stays open for the lifetime of this loader
+            return lookup.apply(loaded.reader(), loaded.reference());
+        }
         var module = configuration.findModule(moduleName);
         if (module.isEmpty()) {
             throw new NoSuchFileException("module " + moduleName);
@@ -313,14 +708,18 @@ public class ModuleClassLoader extends ClassLoader {
     }
 
     protected byte[] getMaybeTransformedClassBytes(final String name, final String context) throws ClassNotFoundException {
-        byte[] bytes = new byte[0];
+        byte[] bytes = EMPTY_BYTES;
         Throwable suppressed = null;
         try {
             final var pname = name.substring(0, name.lastIndexOf('.'));
             if (this.packageLookup.containsKey(pname)) {
-                bytes = loadFromModule(classNameToModuleName(name), (reader, ref)->this.getClassBytes(reader, ref, name));
+                // Subclasses may find bytes for a class the jar does not have, so only cache our own misses
+                if (this.overridesGetClassBytes || !classMisses.contains(name)) {
+                    bytes = loadFromModule(classNameToModuleName(name), (reader, ref)->this.getClassBytes(reader, ref, name));
+                    if (!this.overridesGetClassBytes && bytes.length == 0) classMisses.add(name);
+                }
             } else if (this.parentLoaders.containsKey(pname)) {
-                var cname = name.replace('.','/')+".class";
+                var cname = classFileName(name);
                 try (var is = this.parentLoaders.get(pname).getResourceAsStream(cname)) {
                     if (is != null)
                         bytes = is.readAllBytes();
@@ -340,5 +739,7 @@ public class ModuleClassLoader extends ClassLoader {
 
     public void setFallbackClassLoader(final ClassLoader fallbackClassLoader) {
         this.fallbackClassLoader = fallbackClassLoader;
+        // The new loader may have classes that the old one did not
+        this.delegatedMisses.clear();
     }
 }
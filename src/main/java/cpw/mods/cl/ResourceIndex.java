@@ -0,0 +1,97 @@
+package cpw.mods.cl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+
+/**
+ * Index of the resources outside of any package, from the first two levels of their name to the modules that have them.
+ *
+ * <p>Resources like {@code pack.mcmeta}, {@code assets/<modid>/...} or {@code META-INF/...} do not belong to a package,
+ * so without an index every module would have to be asked for them.
+ * Only the root of each jar and the directories right below it are listed,
+ * so {@code assets/<modid>/lang/en_us.json} is looked up under {@code assets/<modid>}.
+ *
+ * <p>The listing is taken once, when the loader first looks up such a resource. For jars backed by a directory,
+ * as in a development environment, a top-level directory, or one right below it, that is created afterwards
+ * is therefore never found. Files added to directories that were already listed are.
+ */
+final class ResourceIndex {
+    private final List<LoadedModule> all;
+    private final Map<String, List<LoadedModule>> modules;
+    // Modules that could not be listed, asked for every resource
+    private final List<LoadedModule> unindexed;
+
+    private ResourceIndex(List<LoadedModule> all, Map<String, List<LoadedModule>> modules, List<LoadedModule> unindexed) {
+        this.all = all;
+        this.modules = modules;
+        this.unindexed = unindexed;
+    }
+
+    /**
+     * Lists the jars of the given modules; the candidates of a resource keep the order of the modules.
+     */
+    static ResourceIndex build(Collection<LoadedModule> loadedModules) {
+        var modules = new HashMap<String, List<LoadedModule>>();
+        var unindexed = new ArrayList<LoadedModule>();
+        for (var module : loadedModules) {
+            // Files under META-INF/versions can stand in for others, which a listing of the root does not show
+            var manifest = module.jar().getManifest();
+            if (manifest != null && Boolean.parseBoolean(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE))) {
+                unindexed.add(module);
+                continue;
+            }
+            try {
+                var root = module.reference().secureJar().getRootPath();
+                try (var top = Files.newDirectoryStream(root)) {
+                    for (var path : top) {
+                        var name = fileName(path);
+                        modules.computeIfAbsent(name, k -> new ArrayList<>()).add(module);
+                        if (!Files.isDirectory(path)) continue;
+                        try (var children = Files.newDirectoryStream(path)) {
+                            for (var child : children) {
+                                modules.computeIfAbsent(name + "/" + fileName(child), k -> new ArrayList<>()).add(module);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                unindexed.add(module);
+            }
+        }
+        return new ResourceIndex(List.copyOf(loadedModules), modules, unindexed);
+    }
+
+    private static String fileName(Path path) {
+        var name = path.getFileName().toString();
+        // Some file systems keep the trailing slash of directories
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /**
+     * {@return the modules that may contain the resource, in the order the index was built with}
+     */
+    List<LoadedModule> candidates(String name) {
+        // The root of every jar, or a name that is not relative to it
+        if (name.isEmpty() || name.startsWith("/")) return all;
+        var end = name.indexOf('/');
+        if (end != -1) {
+            var second = name.indexOf('/', end + 1);
+            // A trailing slash names the directory itself
+            end = second == -1 ? (end == name.length() - 1 ? end : name.length()) : second;
+        } else {
+            end = name.length();
+        }
+        var indexed = modules.getOrDefault(name.substring(0, end), List.of());
+        if (unindexed.isEmpty()) return indexed;
+        // Rare, so just keep the order by filtering all modules
+        return all.stream().filter(m -> indexed.contains(m) || unindexed.contains(m)).toList();
+    }
+}
@@ -0,0 +1,239 @@
+package cpw.mods.cl;
+
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only file of the bytes {@link ModuleClassLoader#maybeTransformClassBytes} returned, keyed by the class name,
+ * a hash of the bytes it was given and the {@linkplain ModuleClassLoader#transformerVersion() transformer version}.
+ * Enabled by setting {@code securejarhandler.transformCache} to a directory, for named loaders that have a transformer version.
+ * Unnamed loaders are not cached, as nothing tells their files apart.
+ *
+ * <p>The file is mapped when the loader first transforms a class; classes transformed since are appended for the next launch.
+ * Each record is {@code key, length, CRC32C, bytes}, where a length of -1 means the transformer returned its input unchanged.
+ * A record cut short by a crash ends the file, and is overwritten by the next append.
+ * Once an append would grow the file past {@code securejarhandler.transformCache.maxSize} bytes, 256 MiB by default,
+ * its header is cleared and the next launch starts it over, which also drops the records of older transformer versions.
+ * It is not truncated right away, as the records mapped from it are still read.
+ * Only one process uses a file at a time, others run without the cache.
+ */
+final class TransformCache {
+    private static final String PROPERTY = "securejarhandler.transformCache";
+    private static final String MAX_SIZE = "securejarhandler.transformCache.maxSize";
+    private static final int MAGIC = 0x534A4854; // SJHT
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = KEY_SIZE + 8;
+    private static final int UNCHANGED = -1;
+    // Offset of the records appended since the file was mapped, which only the next launch reads
+    private static final int APPENDED = -1;
+
+    private final byte[] version;
+    private final FileChannel channel;
+    @Nullable
+    private final MappedByteBuffer mapped;
+    // From key to the offset of the record in the mapped file, or APPENDED
+    private final Map<ByteBuffer, Integer> records;
+    private final long maxSize;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Guarded by appendLock
+    private long end;
+    private boolean full;
+
+    private TransformCache(byte[] version, FileChannel channel, @Nullable MappedByteBuffer mapped, Map<ByteBuffer, Integer> records, long end, long maxSize) {
+        this.version = version;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.records = records;
+        this.end = end;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Opens the cache of a class loader, or returns {@code null} if caching is not enabled,
+     * or the file cannot be used.
+     */
+    @Nullable
+    static TransformCache open(@Nullable String loaderName, @Nullable String transformerVersion) {
+        var directory = System.getProperty(PROPERTY);
+        if (directory == null || directory.isEmpty() || loaderName == null || transformerVersion == null) return null;
+
+        long maxSize = Long.getLong(MAX_SIZE, 256L << 20);
+        var file = Paths.get(directory).resolve(loaderName.replaceAll("[^A-Za-z0-9._-]", "_") + ".transformed.bin");
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Another loader of the same name in this process
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                return null;
+            }
+            // The lock is released when the channel is closed, at the latest when the process exits
+
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > maxSize || size > Integer.MAX_VALUE || readInt(channel, 0) != MAGIC || readInt(channel, 4) != FORMAT) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT).flip(), 0);
+                size = HEADER_SIZE;
+            }
+
+            var mapped = size > HEADER_SIZE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            var records = new ConcurrentHashMap<ByteBuffer, Integer>();
+            long end = mapped == null ? HEADER_SIZE : index(mapped, records);
+            return new TransformCache(transformerVersion.getBytes(StandardCharsets.UTF_8), channel, mapped, records, end, maxSize);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Closes the file, which releases it for another instance.
+     */
+    @VisibleForTesting
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Indexes the records of the file.
+     * {@return the offset right after the last complete record}
+     */
+    private static long index(MappedByteBuffer mapped, Map<ByteBuffer, Integer> records) {
+        int offset = HEADER_SIZE;
+        var crc = new CRC32C();
+        while (offset + RECORD_HEADER_SIZE <= mapped.limit()) {
+            int length = mapped.getInt(offset + KEY_SIZE);
+            int payload = Math.max(length, 0);
+            if (length < UNCHANGED || offset + RECORD_HEADER_SIZE + payload > mapped.limit()) break;
+            crc.reset();
+            crc.update(mapped.slice(offset + RECORD_HEADER_SIZE, payload));
+            if ((int) crc.getValue() != mapped.getInt(offset + KEY_SIZE + 4)) break;
+            var key = new byte[KEY_SIZE];
+            mapped.get(offset, key);
+            records.put(ByteBuffer.wrap(key), offset);
+            offset += RECORD_HEADER_SIZE + payload;
+        }
+        return offset;
+    }
+
+    /**
+     * Clears the magic number, so that the next launch starts the file over. Called with the append lock held.
+     */
+    private void startOver() throws IOException {
+        full = true;
+        var zero = ByteBuffer.allocate(4);
+        while (zero.hasRemaining()) {
+            channel.write(zero, zero.position());
+        }
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        var buffer = ByteBuffer.allocate(4);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) return 0;
+        }
+        return buffer.getInt(0);
+    }
+
+    /**
+     * {@return the key of the bytes of a class, for the transformer version of this cache}
+     */
+    byte[] key(String name, byte[] input) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(version);
+            digest.update((byte) 0);
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(input);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * {@return the transformed bytes recorded by an earlier launch, {@code input} itself if the transformer
+     * returned it unchanged, or {@code null} if there are none}
+     */
+    @Nullable
+    byte[] get(byte[] key, byte[] input) {
+        var offset = records.get(ByteBuffer.wrap(key));
+        if (offset == null || offset == APPENDED || mapped == null) return null;
+        int length = mapped.getInt(offset + KEY_SIZE);
+        if (length == UNCHANGED) return input;
+        var bytes = new byte[length];
+        mapped.get(offset + RECORD_HEADER_SIZE, bytes);
+        return bytes;
+    }
+
+    /**
+     * Appends what the transformer returned for a class, for the next launch.
+     */
+    void put(byte[] key, byte[] input, byte[] output) {
+        // Claimed first, so that a class transformed twice is only appended once
+        var recordKey = ByteBuffer.wrap(key.clone());
+        if (records.putIfAbsent(recordKey, APPENDED) != null) return;
+        boolean unchanged = output == input || Arrays.equals(output, input);
+        var payload = unchanged ? new byte[0] : output;
+        var crc = new CRC32C();
+        crc.update(payload);
+        var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .put(key)
+                .putInt(unchanged ? UNCHANGED : payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+        appendLock.lock();
+        try {
+            // The next launch starts over, so anything appended after that is lost anyway
+            if (full) return;
+            if (end + record.remaining() > maxSize) {
+                startOver();
+                return;
+            }
+            long position = end;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            end = position;
+        } catch (IOException e) {
+            // Not cached then, the next launch transforms the class again
+            records.remove(recordKey, APPENDED);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package cpw.mods.jarhandling;
 
+import cpw.mods.niofs.union.ContentFingerprint;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.jar.Manifest;
 
 /**
@@ -34,6 +37,10 @@ public interface JarContents extends Closeable {
     /**
      * {@return the manifest of the jar}
      * Empty if no manifest is present in the jar.
+     *
+     * <p>For jars whose manifest lists per-entry digests, the {@code *-Digest} attributes are not part of the returned manifest,
+     * and neither are the entry sections that only had digests; they are kept in a compact form to verify the entries.
+     * Use {@link SecureJar#getTrustedManifestEntries} for the attributes of an entry including its digests.
      */
     Manifest getManifest();
 
@@ -56,6 +63,32 @@ public interface JarContents extends Closeable {
      */
     List<SecureJar.Provider> getMetaInfServices();
 
+    /**
+     * {@return a fingerprint of the contents of the jar}
+     * This is a cheap and stable key for caches of data derived from the jar,
+     * computed from the central directory of jar files and the modification times of files in directories.
+     * It is computed once, when first requested.
+     *
+     * @see cpw.mods.niofs.union.UnionFileSystem#fingerprint()
+     */
+    ContentFingerprint fingerprint();
+
+    /**
+     * Reads every file in the jar, and passes its name and contents to the visitor.
+     *
+     * <p>Files are visited one at a time on the calling thread, in storage order:
+     * central directory order for jar files, with files that are shadowed or filtered out skipped.
+     * Multi-release jars are read as stored, so versioned files are visited under their {@code META-INF/versions/} name.
+     * Meanwhile, the next files are read and inflated in parallel on the given executor,
+     * with a bounded number of files read ahead of the visitor.
+     *
+     * <p>The buffer passed to the visitor is reused once the visitor returns, and must not be retained.
+     *
+     * <p>This is much faster than walking the jar and reading files one by one
+     * for consumers that need to look at most of the jar, such as class scanners and indexers.
+     */
+    void readAllEntries(Executor executor, EntryVisitor visitor) throws IOException;
+
     /**
      * Create plain jar contents from a single jar file or folder.
      * For more advanced use-cases see {@link JarContentsBuilder}.
@@ -71,4 +104,16 @@ public interface JarContents extends Closeable {
     static JarContents of(Collection<Path> filesOrFolders) {
         return new JarContentsBuilder().paths(filesOrFolders.toArray(new Path[0])).build();
     }
+
+    /**
+     * Receives the files of a jar, see {@link #readAllEntries(Executor, EntryVisitor)}.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+        /**
+         * @param name     the path of the file in the jar, separated by {@code /}
+         * @param contents the contents of the file, between the buffer's position and limit
+         */
+        void visit(String name, ByteBuffer contents) throws IOException;
+    }
 }
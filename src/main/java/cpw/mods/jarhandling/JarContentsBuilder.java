@@ -4,8 +4,16 @@ import cpw.mods.jarhandling.impl.JarContentsImpl;
 import cpw.mods.niofs.union.UnionPathFilter;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 import java.util.jar.Manifest;
 
@@ -55,4 +63,57 @@ public final class JarContentsBuilder {
     public JarContents build() {
         return new JarContentsImpl(paths, defaultManifest, pathFilter == null ? null : pathFilter::test);
     }
+
+    /**
+     * Builds many jars at once, opening them concurrently on virtual threads.
+     *
+     * @see #buildAll(List, Executor)
+     */
+    public static List<JarContents> buildAll(List<JarContentsBuilder> builders) {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            return buildAll(builders, executor);
+        }
+    }
+
+    /**
+     * Builds many jars at once.
+     * Opening a jar reads its manifest, signing data and multi-release information,
+     * which is mostly I/O and independent for every jar, so the jars are opened concurrently on the given executor.
+     *
+     * <p>The builders must not be modified until this method returns.
+     *
+     * @return the built jars, in the same order as {@code builders}
+     * @throws UncheckedIOException if any of the jars could not be opened.
+     *                              The jars that could be opened are closed again,
+     *                              and the failure of every jar is attached as a suppressed exception.
+     */
+    public static List<JarContents> buildAll(List<JarContentsBuilder> builders, Executor executor) {
+        var futures = builders.stream()
+                .map(builder -> CompletableFuture.supplyAsync(builder::build, executor))
+                .toList();
+
+        List<JarContents> built = new ArrayList<>(futures.size());
+        List<Throwable> failures = new ArrayList<>();
+        for (var future : futures) {
+            try {
+                built.add(future.join());
+            } catch (CompletionException e) {
+                failures.add(e.getCause() != null ? e.getCause() : e);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            var aggregate = new IOException("Failed to open " + failures.size() + " of " + builders.size() + " jars in JarContentsBuilder.buildAll");
+            failures.forEach(aggregate::addSuppressed);
+            for (var contents : built) {
+                try {
+                    contents.close();
+                } catch (IOException e) {
+                    aggregate.addSuppressed(e);
+                }
+            }
+            throw new UncheckedIOException(aggregate);
+        }
+        return built;
+    }
 }
@@ -1,6 +1,6 @@
 package cpw.mods.jarhandling;
 
-import org.jetbrains.annotations.Nullable;
+import cpw.mods.util.Lazy;
 
 import java.lang.module.ModuleDescriptor;
 
@@ -9,20 +9,16 @@ import java.lang.module.ModuleDescriptor;
  * This is recommended because descriptor computation can then run in parallel.
  */
 public abstract class LazyJarMetadata implements JarMetadata {
-    @Nullable
-    private ModuleDescriptor descriptor;
+    private final Lazy<ModuleDescriptor> descriptor = Lazy.of(this::computeDescriptor);
 
     @Override
     public final ModuleDescriptor descriptor() {
-        if (descriptor == null) {
-            descriptor = computeDescriptor();
-        }
-        return descriptor;
+        return descriptor.get();
     }
 
     /**
      * Computes the module descriptor for this jar.
-     * This method is called at most once.
+     * This method is called at most once, even if {@link #descriptor()} is called concurrently.
      */
     protected abstract ModuleDescriptor computeDescriptor();
 }
@@ -3,6 +3,7 @@ package cpw.mods.jarhandling;
 import cpw.mods.jarhandling.impl.Jar;
 import cpw.mods.jarhandling.impl.JarContentsImpl;
 import cpw.mods.niofs.union.UnionPathFilter;
+import cpw.mods.util.LambdaExceptionUtils;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
@@ -12,12 +13,18 @@ import java.lang.module.ModuleDescriptor;
 import java.lang.module.ModuleReader;
 import java.lang.module.ModuleReference;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.CodeSigner;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.jar.Attributes;
+import java.util.function.IntFunction;
 import java.util.jar.Manifest;
 
 /**
@@ -82,6 +89,120 @@ public interface SecureJar {
      */
     Path getRootPath();
 
+    /**
+     * Reads every file in the jar, and passes its name and contents to the visitor.
+     *
+     * <p>The default implementation walks the {@linkplain #getRootPath() root path} and reads files one by one.
+     *
+     * @see JarContents#readAllEntries(Executor, JarContents.EntryVisitor)
+     */
+    default void readAllEntries(Executor executor, JarContents.EntryVisitor visitor) throws IOException {
+        var root = getRootPath();
+        try (var walk = Files.walk(root)) {
+            for (var it = walk.filter(Files::isRegularFile).iterator(); it.hasNext(); ) {
+                var path = it.next();
+                visitor.visit(root.relativize(path).toString(), ByteBuffer.wrap(Files.readAllBytes(path)));
+            }
+        }
+    }
+
+    /**
+     * Verifies every file in the jar, spreading the work over the executor,
+     * so that later {@link #getFileStatus} calls and class loads find the status already computed.
+     *
+     * <p>The default implementation walks the {@linkplain #getRootPath() root path} and calls {@link #verifyPath} on every file.
+     * It only has the status to go by, so every {@link Status#VERIFIED} file counts as verified.
+     *
+     * @throws IOException if any file could not be read, with the failure of each such file suppressed
+     */
+    default VerificationReport verifyAll(Executor executor) throws IOException {
+        var root = getRootPath();
+        List<String> names;
+        try (var walk = Files.walk(root)) {
+            names = walk.filter(Files::isRegularFile).map(p -> root.relativize(p).toString()).toList();
+        }
+        var futures = names.stream()
+                .map(name -> CompletableFuture.supplyAsync(() -> verifyPath(getPath(name)), executor))
+                .toList();
+        var report = new VerificationReport.Builder();
+        IOException failure = null;
+        for (int i = 0; i < names.size(); i++) {
+            try {
+                var status = futures.get(i).join();
+                report.add(names.get(i), status == Status.VERIFIED ? Status.VERIFIED : status == Status.INVALID ? Status.INVALID : Status.NONE);
+            } catch (CompletionException e) {
+                if (failure == null) failure = new IOException("Failed to verify all files of " + name());
+                failure.addSuppressed(e.getCause());
+            }
+        }
+        if (failure != null) throw failure;
+        return report.build();
+    }
+
+    /**
+     * Outcome of {@link #verifyAll}.
+     *
+     * @param verified        the number of files whose digests matched and that have signers
+     * @param invalid         the number of files whose digests did not match
+     * @param none            the number of files without signers
+     * @param invalidEntries  the names of the invalid files
+     * @param unsignedEntries the names of the files without signers, only listed if the jar {@linkplain #hasSecurityData() is signed}
+     */
+    record VerificationReport(int verified, int invalid, int none, List<String> invalidEntries, List<String> unsignedEntries) {
+        public VerificationReport {
+            invalidEntries = List.copyOf(invalidEntries);
+            unsignedEntries = List.copyOf(unsignedEntries);
+        }
+
+        /**
+         * {@return whether every file was verified}
+         */
+        public boolean allVerified() {
+            return invalid == 0 && none == 0;
+        }
+
+        /**
+         * Collects the status of each file into a report.
+         */
+        public static final class Builder {
+            private int verified;
+            private final List<String> invalidEntries = new ArrayList<>();
+            private final List<String> unsignedEntries = new ArrayList<>();
+            private int none;
+            private final boolean listUnsigned;
+
+            public Builder() {
+                this(false);
+            }
+
+            /**
+             * @param listUnsigned whether to list the files without signers, and not just count them
+             */
+            public Builder(boolean listUnsigned) {
+                this.listUnsigned = listUnsigned;
+            }
+
+            /**
+             * Adds a file to the report, where {@link Status#NONE} stands for a file without signers.
+             */
+            public Builder add(String name, Status status) {
+                switch (status) {
+                    case VERIFIED -> verified++;
+                    case INVALID -> invalidEntries.add(name);
+                    default -> {
+                        none++;
+                        if (listUnsigned) unsignedEntries.add(name);
+                    }
+                }
+                return this;
+            }
+
+            public VerificationReport build() {
+                return new VerificationReport(verified, invalidEntries.size(), none, invalidEntries, unsignedEntries);
+            }
+        }
+    }
+
     /**
      * Closes the underlying file system resources (if any).
      * Renders this object unusable.
@@ -119,7 +240,21 @@ public interface SecureJar {
         Optional<InputStream> open(final String name);
 
         /**
-         * {@return the manifest of the jar}
+         * Reads the whole contents of an entry.
+         * Implementations backed by a jar allocate the array with the exact size of the entry.
+         *
+         * @see #open(String)
+         */
+        default Optional<byte[]> readFile(final String name) {
+            return open(name).map(LambdaExceptionUtils.rethrowFunction(is -> {
+                try (is) {
+                    return is.readAllBytes();
+                }
+            }));
+        }
+
+        /**
+         * {@return the manifest of the jar}, without per-entry digests, as described by {@link JarContents#getManifest()}
          */
         Manifest getManifest();
 
@@ -128,8 +263,48 @@ public interface SecureJar {
          */
         @Nullable
         CodeSigner[] verifyAndGetSigners(String cname, byte[] bytes);
+
+        /**
+         * Reads an entry and verifies it, in a single pass over its bytes where the implementation supports it.
+         * {@return the bytes and signers of the entry, or an empty optional if the entry does not exist}
+         *
+         * @see #open(String)
+         * @see #verifyAndGetSigners(String, byte[])
+         */
+        default Optional<VerifiedBytes> readVerified(final String name) {
+            return open(name).map(LambdaExceptionUtils.rethrowFunction(is -> {
+                try (is) {
+                    var bytes = is.readAllBytes();
+                    return new VerifiedBytes(bytes, verifyAndGetSigners(name, bytes));
+                }
+            }));
+        }
+
+        /**
+         * Same as {@link #readVerified(String)}, into a buffer from the allocator, which is given the size of the entry
+         * and returns a cleared buffer of at least that capacity. It may be called again if the entry turns out to be larger.
+         * Lets callers read into direct buffers they reuse, rather than into a new array on the heap.
+         * {@return the buffer, flipped, and signers of the entry, or an empty optional if the entry does not exist}
+         */
+        default Optional<VerifiedBuffer> readVerified(final String name, final IntFunction<ByteBuffer> allocator) {
+            return readVerified(name).map(read -> new VerifiedBuffer(ByteBuffer.wrap(read.bytes()), read.signers()));
+        }
     }
 
+    /**
+     * The contents of an entry, together with its signers.
+     *
+     * @param signers the signers if the entry could be verified, or {@code null} otherwise
+     */
+    record VerifiedBytes(byte[] bytes, @Nullable CodeSigner[] signers) {}
+
+    /**
+     * The contents of an entry in a buffer, together with its signers.
+     *
+     * @param signers the signers if the entry could be verified, or {@code null} otherwise
+     */
+    record VerifiedBuffer(ByteBuffer buffer, @Nullable CodeSigner[] signers) {}
+
     /**
      * Same as {@link ModuleDescriptor.Provides}, but with an exposed constructor.
      * Use only if the {@link #fromPath} method is useful to you.
@@ -1,5 +1,6 @@
 package cpw.mods.jarhandling.impl;
 
+import cpw.mods.jarhandling.JarContents;
 import cpw.mods.jarhandling.JarMetadata;
 import cpw.mods.jarhandling.SecureJar;
 import cpw.mods.niofs.union.UnionFileSystem;
@@ -10,11 +11,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.module.ModuleDescriptor;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.CodeSigner;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -70,7 +74,7 @@ public class Jar implements SecureJar {
     public Status verifyPath(final Path path) {
         if (path.getFileSystem() != filesystem) throw new IllegalArgumentException("Wrong filesystem");
         final var pathname = path.toString();
-        return signingData.verifyPath(manifest, path, pathname);
+        return signingData.verifyPath(path, pathname);
     }
 
     @Override
@@ -104,6 +108,16 @@ public class Jar implements SecureJar {
         return filesystem.getPath("");
     }
 
+    @Override
+    public void readAllEntries(Executor executor, JarContents.EntryVisitor visitor) throws IOException {
+        contents.readAllEntries(executor, visitor);
+    }
+
+    @Override
+    public VerificationReport verifyAll(Executor executor) throws IOException {
+        return signingData.verifyAll(filesystem.listEntries(), executor, name());
+    }
+
     @Override
     public void close() throws IOException {
         contents.close();
@@ -137,7 +151,15 @@ public class Jar implements SecureJar {
 
         @Override
         public Optional<InputStream> open(final String name) {
-            return jar.findFile(name).map(Paths::get).map(LambdaExceptionUtils.rethrowFunction(Files::newInputStream));
+            // Straight to the entry, without turning it into a URI and back
+            var path = jar.contents.findPath(name);
+            return Optional.ofNullable(LambdaExceptionUtils.uncheck(() -> {
+                try {
+                    return Files.newInputStream(path);
+                } catch (NoSuchFileException e) {
+                    return null;
+                }
+            }));
         }
 
         @Override
@@ -148,7 +170,30 @@ public class Jar implements SecureJar {
         @Override
         @Nullable
         public CodeSigner[] verifyAndGetSigners(final String cname, final byte[] bytes) {
-            return jar.signingData.verifyAndGetSigners(jar.manifest, cname, bytes);
+            return jar.signingData.verifyAndGetSigners(cname, bytes);
+        }
+
+        @Override
+        public Optional<VerifiedBytes> readVerified(final String name) {
+            // Straight to the entry, without turning it into a URI and back
+            var path = jar.contents.findPath(name);
+            return Optional.ofNullable(LambdaExceptionUtils.uncheck(() -> jar.signingData.readAndVerify(path, name)));
+        }
+
+        @Override
+        public Optional<VerifiedBuffer> readVerified(final String name, final IntFunction<ByteBuffer> allocator) {
+            var path = jar.contents.findPath(name);
+            return Optional.ofNullable(LambdaExceptionUtils.uncheck(() -> jar.signingData.readAndVerify(path, name, allocator)));
+        }
+
+        @Override
+        public Optional<byte[]> readFile(final String name) {
+            var path = jar.contents.findPath(name);
+            return Optional.ofNullable(LambdaExceptionUtils.uncheck(() -> {
+                try (var channel = JarSigningData.openIfExists(path)) {
+                    return channel == null ? null : JarSigningData.readAll(channel, null);
+                }
+            }));
         }
     }
 }
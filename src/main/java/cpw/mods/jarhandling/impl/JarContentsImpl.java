@@ -2,9 +2,11 @@ package cpw.mods.jarhandling.impl;
 
 import cpw.mods.jarhandling.JarContents;
 import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.niofs.union.ContentFingerprint;
 import cpw.mods.niofs.union.UnionFileSystem;
 import cpw.mods.niofs.union.UnionFileSystemProvider;
 import cpw.mods.niofs.union.UnionPathFilter;
+import cpw.mods.util.Lazy;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
@@ -23,9 +25,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
 public class JarContentsImpl implements JarContents {
@@ -45,9 +47,11 @@ public class JarContentsImpl implements JarContents {
     private final Map<Path, Integer> nameOverrides;
 
     // Cache for repeated getPackages calls
-    private Set<String> packages;
+    private final Lazy<Set<String>> packages = Lazy.of(this::getPackagesExcluding);
     // Cache for repeated getMetaInfServices calls
-    private List<SecureJar.Provider> providers;
+    private final Lazy<List<SecureJar.Provider>> providers = Lazy.of(this::readMetaInfServices);
+    // Cache for repeated fingerprint calls
+    private final Lazy<ContentFingerprint> fingerprint = Lazy.of(this::computeFingerprint);
 
     public JarContentsImpl(Path[] paths, Supplier<Manifest> defaultManifest, @Nullable UnionPathFilter pathFilter) {
         var validPaths = Arrays.stream(paths).filter(Files::exists).toArray(Path[]::new);
@@ -73,13 +77,10 @@ public class JarContentsImpl implements JarContents {
                         }
                     }
                 } else {
-                    try (var jis = new JarInputStream(Files.newInputStream(path))) {
-                        // Jar file: use the signature verification code
-                        signingData.readJarSigningData(jis);
-
-                        if (jis.getManifest() != null) {
-                            return new Manifest(jis.getManifest());
-                        }
+                    // Jar file: use the signature verification code
+                    var manifest = signingData.readJarSigningData(path);
+                    if (manifest != null) {
+                        return manifest;
                     }
                 }
             }
@@ -144,11 +145,18 @@ public class JarContentsImpl implements JarContents {
 
     @Override
     public Optional<URI> findFile(String name) {
+        return Optional.of(findPath(name)).filter(Files::exists).map(Path::toUri);
+    }
+
+    /**
+     * {@return the path of an entry, taking multi-release versions into account; the entry may not exist}
+     */
+    Path findPath(String name) {
         var rel = filesystem.getPath(name);
         if (this.nameOverrides.containsKey(rel)) {
             rel = this.filesystem.getPath("META-INF", "versions", this.nameOverrides.get(rel).toString()).resolve(rel);
         }
-        return Optional.of(this.filesystem.getRoot().resolve(rel)).filter(Files::exists).map(Path::toUri);
+        return this.filesystem.getRoot().resolve(rel);
     }
 
     @Override
@@ -192,34 +200,53 @@ public class JarContentsImpl implements JarContents {
 
     @Override
     public Set<String> getPackages() {
-        if (this.packages == null) {
-            this.packages = getPackagesExcluding();
-        }
-        return this.packages;
+        return this.packages.get();
     }
 
     @Override
     public List<SecureJar.Provider> getMetaInfServices() {
-        if (this.providers == null) {
-            final var services = this.filesystem.getRoot().resolve("META-INF/services/");
-            if (Files.exists(services)) {
-                try (var walk = Files.walk(services, 1)) {
-                    this.providers = walk.filter(path->!Files.isDirectory(path))
-                            .filter(path -> !NAUGHTY_SERVICE_FILES.contains(path.getFileName().toString()))
-                            .map((Path path1) -> SecureJar.Provider.fromPath(path1, filesystem.getFilesystemFilter()))
-                            .toList();
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            } else {
-                this.providers = List.of();
-            }
+        return this.providers.get();
+    }
+
+    private List<SecureJar.Provider> readMetaInfServices() {
+        final var services = this.filesystem.getRoot().resolve("META-INF/services/");
+        if (!Files.exists(services)) {
+            return List.of();
+        }
+        try (var walk = Files.walk(services, 1)) {
+            return walk.filter(path->!Files.isDirectory(path))
+                    .filter(path -> !NAUGHTY_SERVICE_FILES.contains(path.getFileName().toString()))
+                    .map((Path path1) -> SecureJar.Provider.fromPath(path1, filesystem.getFilesystemFilter()))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return this.providers;
+    }
+
+    @Override
+    public ContentFingerprint fingerprint() {
+        return fingerprint.get();
+    }
+
+    private ContentFingerprint computeFingerprint() {
+        try {
+            return filesystem.fingerprint();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void readAllEntries(Executor executor, EntryVisitor visitor) throws IOException {
+        ParallelEntryReader.readAll(filesystem.listEntries(), executor, visitor);
     }
 
     @Override
     public void close() throws IOException {
-        filesystem.close();
+        try {
+            signingData.saveVerifiedDigests();
+        } finally {
+            filesystem.close();
+        }
     }
 }
@@ -1,32 +1,69 @@
 package cpw.mods.jarhandling.impl;
 
 import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.niofs.union.UnionFileSystem;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.security.CodeSigner;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.zip.ZipInputStream;
 
 /**
  * The signing data for a {@link Jar}.
+ *
+ * <p>Entries can be verified concurrently, from any number of threads.
+ * Each entry is verified at most once, and its status is remembered afterwards.
  */
 public class JarSigningData {
     private static final CodeSigner[] EMPTY_CODESIGNERS = new CodeSigner[0];
+    private static final int CHUNK_SIZE = 8192;
+    // Same limit as InputStream#readAllBytes
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    // Entries are small, so verify several of them per task
+    private static final int VERIFY_BATCH_SIZE = 32;
 
-    private final Hashtable<String, CodeSigner[]> pendingSigners = new Hashtable<>();
-    private final Hashtable<String, CodeSigner[]> verifiedSigners = new Hashtable<>();
+    // Validating signature blocks is slow, so it happens on these threads rather than while opening the jar
+    private static final Executor SIGNATURE_VALIDATION = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Per-entry digests and signers, present for jars whose manifest lists digests
+    @Nullable
+    private ManifestDigests digests;
+    // Written by the signature validation, only read after awaitSignatures
+    private boolean hasSecurityData;
+    @Nullable
+    private VerifiedDigestCache verifiedDigestCache;
+    private CompletableFuture<Void> signatures = CompletableFuture.completedFuture(null);
     private final ManifestVerifier verifier = new ManifestVerifier();
-    private final Map<String, StatusData> statusData = new HashMap<>();
+    private final Map<String, StatusData> statusData = new ConcurrentHashMap<>();
+    // Entries being digested by one thread, completed with their status, or null if that thread failed to read them
+    private final Map<String, CompletableFuture<StatusData>> verifying = new ConcurrentHashMap<>();
 
     record StatusData(String name, SecureJar.Status status, CodeSigner[] signers) {
         static void add(final String name, final SecureJar.Status status, final CodeSigner[] signers, JarSigningData data) {
@@ -35,39 +72,391 @@ public class JarSigningData {
     }
 
     /**
-     * Read signing data from a {@link JarInputStream}.
+     * Read signing data from a jar file.
      * For now this is the only way of reading signing data.
+     *
+     * <p>Only the manifest and the other {@code META-INF} files at the start of the jar are read right away.
+     * The signature blocks are validated in the background, unless the {@link SignerCache} already knows their signers,
+     * and every method that needs the signers waits for that to finish.
+     *
+     * @return a copy of the manifest of the jar, or {@code null} if it has none.
+     *         The per-entry digests are moved out of the copy into a compact {@link ManifestDigests} table.
      */
-    void readJarSigningData(JarInputStream jis) throws IOException {
-        var jv = SecureJarVerifier.getJarVerifier(jis);
-        if (jv != null) {
+    @Nullable
+    Manifest readJarSigningData(Path jar) throws IOException {
+        byte[] manifestBytes;
+        var key = new SignerCache.KeyBuilder();
+        var signatureFiles = new HashMap<String, byte[]>();
+        boolean hasSignatureFiles = false;
+        try (var zis = new ZipInputStream(Files.newInputStream(jar))) {
+            // Same rules as JarInputStream: the manifest is the first entry, or the second one after META-INF/
+            var entry = zis.getNextEntry();
+            if (entry != null && entry.getName().equalsIgnoreCase("META-INF/")) entry = zis.getNextEntry();
+            if (entry == null || !JarFile.MANIFEST_NAME.equalsIgnoreCase(entry.getName())) return null;
+            manifestBytes = zis.readAllBytes();
+            key.add(entry.getName(), manifestBytes);
+
+            // Same rules as JarVerifier: only META-INF files before any other entry are looked at.
+            // All of them go into the key, so it covers everything the verifier could depend on.
+            while ((entry = zis.getNextEntry()) != null) {
+                var uname = entry.getName().toUpperCase(Locale.ENGLISH);
+                if (!uname.startsWith("META-INF/") && !uname.startsWith("/META-INF/")) break;
+                var bytes = zis.readAllBytes();
+                key.add(entry.getName(), bytes);
+                if (SignatureBlock.isSignatureFile(entry.getName())) signatureFiles.put(entry.getName(), bytes);
+                hasSignatureFiles |= uname.endsWith(".SF");
+            }
+        }
+
+        var manifest = new Manifest(new ByteArrayInputStream(manifestBytes));
+        this.digests = ManifestDigests.strip(manifest);
+        if (hasSignatureFiles) {
+            var cacheKey = key.build();
+            this.signatures = CompletableFuture.runAsync(() -> {
+                try {
+                    readSignatures(jar, cacheKey, manifestBytes, signatureFiles);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, SIGNATURE_VALIDATION);
+        }
+        return manifest;
+    }
+
+    private void readSignatures(Path jar, String cacheKey, byte[] manifestBytes, Map<String, byte[]> signatureFiles) throws IOException {
+        var signers = SignerCache.get(cacheKey);
+        if (signers == null) signers = readSigners(jar, cacheKey, manifestBytes, signatureFiles);
+        if (signers == null) return;
+
+        digests.setSigners(signers.entries());
+        StatusData.add(JarFile.MANIFEST_NAME, SecureJar.Status.VERIFIED, signers.manifest(), this);
+        this.hasSecurityData = digests.hasSigners() || signers.manifest() != null;
+        loadVerifiedDigests(jar);
+    }
+
+    /**
+     * Reads the signers of a jar that is not in the {@link SignerCache} yet.
+     * If its signer is, only the parts of the signature that are specific to this jar are checked.
+     * {@return the signers, or {@code null} if the jar has no valid signatures}
+     */
+    @Nullable
+    private static SignerCache.Signers readSigners(Path jar, String cacheKey, byte[] manifestBytes, Map<String, byte[]> signatureFiles) throws IOException {
+        var block = SignatureBlock.parse(signatureFiles);
+        var blockSigners = block == null ? null : SignerCache.getBlockSigners(block.signerKey());
+        var entries = blockSigners == null ? null : block.verify(manifestBytes, blockSigners);
+        if (entries != null) return SignerCache.put(cacheKey, entries, blockSigners);
+
+        try (var jis = new JarInputStream(Files.newInputStream(jar))) {
+            var jv = SecureJarVerifier.getJarVerifier(jis);
+            if (jv == null) return null;
             while (SecureJarVerifier.isParsingMeta(jv)) {
                 if (jis.getNextJarEntry() == null) break;
             }
+            if (!SecureJarVerifier.hasSignatures(jv)) return null;
 
-            if (SecureJarVerifier.hasSignatures(jv)) {
-                pendingSigners.putAll(SecureJarVerifier.getPendingSigners(jv));
-                var manifestSigners = SecureJarVerifier.getVerifiedSigners(jv).get(JarFile.MANIFEST_NAME);
-                if (manifestSigners != null) verifiedSigners.put(JarFile.MANIFEST_NAME, manifestSigners);
-                StatusData.add(JarFile.MANIFEST_NAME, SecureJar.Status.VERIFIED, verifiedSigners.get(JarFile.MANIFEST_NAME), this);
+            var signers = SignerCache.put(cacheKey, SecureJarVerifier.getPendingSigners(jv),
+                    SecureJarVerifier.getVerifiedSigners(jv).get(JarFile.MANIFEST_NAME));
+            // A single signer without timestamp is the same for every jar it signed
+            var manifest = signers.manifest();
+            if (block != null && manifest != null && manifest.length == 1 && manifest[0].getTimestamp() == null) {
+                SignerCache.putBlockSigners(block.signerKey(), manifest);
             }
+            return signers;
+        }
+    }
+
+    private void awaitSignatures() {
+        try {
+            signatures.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the entries that a previous launch already verified, if the {@link VerifiedDigestCache} is enabled.
+     * Must be called before any entry is verified.
+     */
+    private void loadVerifiedDigests(Path jar) throws IOException {
+        if (!digests.hasSigners()) return;
+        var cache = VerifiedDigestCache.open(jar, digests.signerSets());
+        if (cache == null) return;
+
+        for (var name : cache.verifiedEntries()) {
+            int entry = digests.indexOf(name);
+            StatusData.add(name, SecureJar.Status.VERIFIED, entry < 0 ? null : digests.signers(entry), this);
+        }
+        this.verifiedDigestCache = cache;
+    }
+
+    /**
+     * Saves the entries verified since {@link #loadVerifiedDigests}, if the {@link VerifiedDigestCache} is enabled.
+     */
+    void saveVerifiedDigests() throws IOException {
+        try {
+            signatures.join();
+        } catch (CompletionException e) {
+            return; // Nothing was verified
         }
+        if (verifiedDigestCache != null) verifiedDigestCache.save();
     }
 
     @Nullable
     CodeSigner[] getManifestSigners() {
+        awaitSignatures();
         return getData(JarFile.MANIFEST_NAME).map(r->r.signers).orElse(null);
     }
 
-    SecureJar.Status verifyPath(Manifest manifest, Path path, String filename) {
-        if (statusData.containsKey(filename)) return getFileStatus(filename);
-        try {
-            var bytes = Files.readAllBytes(path);
-            verifyAndGetSigners(manifest, filename, bytes);
+    SecureJar.Status verifyPath(Path path, String filename) {
+        CompletableFuture<StatusData> claim;
+        while ((claim = claimVerification(filename)) == null) {
+            if (!hasSecurityData() || statusData.containsKey(filename)) return getFileStatus(filename);
+            // Another thread is digesting it, try again if it failed
+            var pending = verifying.get(filename);
+            if (pending != null) pending.join();
+        }
+        var digester = verifier.startDigest(digests, filename);
+        if (digester == null) {
+            // Not in the manifest, nothing to read
+            finishVerification(filename, claim, null);
             return getFileStatus(filename);
+        }
+        // Only the digests are needed, so stream the file through them without keeping its bytes around
+        try (var is = Files.newInputStream(path)) {
+            var buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digester.update(buffer, 0, read);
+            }
         } catch (IOException e) {
+            abandonVerification(filename, claim);
             throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            abandonVerification(filename, claim);
+            throw e;
+        }
+        finishVerification(filename, claim, digester);
+        return getFileStatus(filename);
+    }
+
+    /**
+     * Reads an entry and verifies it in the same pass: every chunk goes through the digests right after it is read.
+     *
+     * @return the bytes and signers of the entry, or {@code null} if it does not exist
+     */
+    @Nullable
+    SecureJar.VerifiedBytes readAndVerify(Path path, String name) throws IOException {
+        var claim = claimVerification(name);
+        var digester = claim == null ? null : verifier.startDigest(digests, name);
+        byte[] bytes;
+        try (var channel = openIfExists(path)) {
+            bytes = channel == null ? null : readAll(channel, digester);
+        } catch (IOException | RuntimeException e) {
+            if (claim != null) abandonVerification(name, claim);
+            throw e;
+        }
+        if (bytes == null) {
+            if (claim != null) abandonVerification(name, claim);
+            return null;
+        }
+        if (claim != null) return new SecureJar.VerifiedBytes(bytes, finishVerification(name, claim, digester).signers);
+        return new SecureJar.VerifiedBytes(bytes, awaitSigners(name, () -> verifier.verify(digests, name, bytes)));
+    }
+
+    /**
+     * Same as {@link #readAndVerify(Path, String)}, into a buffer from the allocator.
+     */
+    @Nullable
+    SecureJar.VerifiedBuffer readAndVerify(Path path, String name, IntFunction<ByteBuffer> allocator) throws IOException {
+        var claim = claimVerification(name);
+        var digester = claim == null ? null : verifier.startDigest(digests, name);
+        ByteBuffer buffer;
+        try (var channel = openIfExists(path)) {
+            buffer = channel == null ? null : readAll(channel, digester, allocator);
+        } catch (IOException | RuntimeException e) {
+            if (claim != null) abandonVerification(name, claim);
+            throw e;
+        }
+        if (buffer == null) {
+            if (claim != null) abandonVerification(name, claim);
+            return null;
+        }
+        if (claim != null) return new SecureJar.VerifiedBuffer(buffer, finishVerification(name, claim, digester).signers);
+        return new SecureJar.VerifiedBuffer(buffer, awaitSigners(name, () -> {
+            var fallback = verifier.startDigest(digests, name);
+            if (fallback != null) fallback.update(buffer);
+            return verifier.complete(fallback);
+        }));
+    }
+
+    /**
+     * Claims the digesting of an entry for the calling thread, which must then finish or abandon it.
+     * {@return the claim, or {@code null} if the status of the entry is known, or another thread is digesting it}
+     */
+    @Nullable
+    private CompletableFuture<StatusData> claimVerification(String name) {
+        if (!hasSecurityData() || statusData.containsKey(name)) return null;
+        var claim = new CompletableFuture<StatusData>();
+        if (verifying.putIfAbsent(name, claim) != null) return null;
+        // The previous claim may have finished between the two lookups
+        var data = statusData.get(name);
+        if (data != null) {
+            verifying.remove(name, claim);
+            claim.complete(data);
+            return null;
+        }
+        return claim;
+    }
+
+    private StatusData finishVerification(String name, CompletableFuture<StatusData> claim, @Nullable ManifestVerifier.EntryDigester digester) {
+        StatusData data = null;
+        try {
+            var completed = complete(name, digester);
+            data = Objects.requireNonNullElse(statusData.putIfAbsent(name, completed), completed);
+            return data;
+        } finally {
+            // The status is stored before the claim goes away, so nobody can claim the entry again
+            verifying.remove(name, claim);
+            claim.complete(data);
+        }
+    }
+
+    private void abandonVerification(String name, CompletableFuture<StatusData> claim) {
+        verifying.remove(name, claim);
+        claim.complete(null);
+    }
+
+    /**
+     * {@return the signers of an entry that was read without being digested, once the thread digesting it is done}
+     * If there is no such thread, or it failed, the entry is verified from what was read.
+     */
+    @Nullable
+    private CodeSigner[] awaitSigners(String name, Supplier<Optional<CodeSigner[]>> verify) {
+        if (!hasSecurityData()) return null;
+        var data = statusData.get(name);
+        if (data == null) {
+            var pending = verifying.get(name);
+            if (pending != null) data = pending.join();
+        }
+        if (data == null) {
+            data = statusData.computeIfAbsent(name, n -> toStatusData(n, verify.get()));
+        }
+        return data.signers;
+    }
+
+    /**
+     * Opens an entry for reading, with a single lookup instead of checking that it exists first.
+     * {@return the channel, or {@code null} if the entry does not exist}
+     */
+    @Nullable
+    static SeekableByteChannel openIfExists(Path path) throws IOException {
+        try {
+            return Files.newByteChannel(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the rest of a channel into an array of the size the channel reports,
+     * which for zip entries is the uncompressed size from the central directory.
+     */
+    static byte[] readAll(SeekableByteChannel channel, @Nullable ManifestVerifier.EntryDigester digester) throws IOException {
+        var bytes = new byte[(int) Math.min(Math.max(channel.size() - channel.position(), 0), MAX_ARRAY_SIZE)];
+        var buffer = ByteBuffer.wrap(bytes);
+        while (true) {
+            if (buffer.position() == bytes.length) {
+                // The channel was exactly as large as it said, unless it grew since
+                if (channel.position() >= channel.size()) break;
+                if (bytes.length == MAX_ARRAY_SIZE) throw new OutOfMemoryError("Required array size too large");
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Math.max(bytes.length * 2L, CHUNK_SIZE), MAX_ARRAY_SIZE));
+                buffer = ByteBuffer.wrap(bytes).position(buffer.position());
+            }
+            // Bounded chunks, so each one is digested while it is still in the CPU cache
+            int start = buffer.position();
+            buffer.limit(Math.min(bytes.length, start + CHUNK_SIZE));
+            int read = channel.read(buffer);
+            if (read == -1) break;
+            if (digester != null) digester.update(bytes, start, read);
+        }
+        int length = buffer.position();
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Same as {@link #readAll(SeekableByteChannel, ManifestVerifier.EntryDigester)}, into a buffer from the allocator,
+     * which is given the size the channel reports and returns a cleared buffer of at least that capacity.
+     * {@return the buffer, flipped}
+     */
+    static ByteBuffer readAll(SeekableByteChannel channel, @Nullable ManifestVerifier.EntryDigester digester, IntFunction<ByteBuffer> allocator) throws IOException {
+        var buffer = allocator.apply((int) Math.min(Math.max(channel.size() - channel.position(), 0), MAX_ARRAY_SIZE));
+        while (true) {
+            if (buffer.position() == buffer.capacity()) {
+                // The channel was exactly as large as it said, unless it grew since
+                if (channel.position() >= channel.size()) break;
+                if (buffer.capacity() == MAX_ARRAY_SIZE) throw new OutOfMemoryError("Required array size too large");
+                var larger = allocator.apply((int) Math.min(Math.max(buffer.capacity() * 2L, CHUNK_SIZE), MAX_ARRAY_SIZE));
+                buffer = larger.put(buffer.flip());
+            }
+            // Bounded chunks, so each one is digested while it is still in the CPU cache
+            int start = buffer.position();
+            buffer.limit(Math.min(buffer.capacity(), start + CHUNK_SIZE));
+            int read = channel.read(buffer);
+            if (read == -1) break;
+            if (digester != null) digester.update(buffer.duplicate().limit(buffer.position()).position(start));
         }
+        return buffer.flip();
+    }
+
+    /**
+     * Verifies the given entries of the jar in parallel, a batch per task.
+     * Only the entries with digests in the manifest are read, the others have no signers.
+     */
+    SecureJar.VerificationReport verifyAll(List<UnionFileSystem.Entry> entries, Executor executor, String jarName) throws IOException {
+        var files = entries.stream().filter(e -> !SecureJarVerifier.isSigningRelated(e.name())).toList();
+        var report = new SecureJar.VerificationReport.Builder(hasSecurityData());
+        if (!hasSecurityData()) {
+            files.forEach(e -> report.add(e.name(), SecureJar.Status.NONE));
+            return report.build();
+        }
+
+        var toVerify = new ArrayList<UnionFileSystem.Entry>();
+        for (var entry : files) {
+            int index = digests.indexOf(entry.name());
+            if (index >= 0 && digests.firstDigest(index) != digests.endDigest(index)) {
+                toVerify.add(entry);
+            } else {
+                statusData.putIfAbsent(entry.name(), complete(entry.name(), null));
+            }
+        }
+
+        var tasks = new ArrayList<CompletableFuture<Void>>();
+        for (int start = 0; start < toVerify.size(); start += VERIFY_BATCH_SIZE) {
+            var batch = toVerify.subList(start, Math.min(start + VERIFY_BATCH_SIZE, toVerify.size()));
+            tasks.add(CompletableFuture.runAsync(() -> batch.forEach(e -> verifyPath(e.realPath(), e.name())), executor));
+        }
+        IOException failure = null;
+        for (var task : tasks) {
+            try {
+                task.join();
+            } catch (CompletionException e) {
+                if (failure == null) failure = new IOException("Failed to verify all entries of " + jarName);
+                failure.addSuppressed(e.getCause() instanceof UncheckedIOException ioe ? ioe.getCause() : e.getCause());
+            }
+        }
+        if (failure != null) throw failure;
+
+        for (var entry : files) {
+            var data = statusData.get(entry.name());
+            if (data.status == SecureJar.Status.INVALID) {
+                report.add(entry.name(), SecureJar.Status.INVALID);
+            } else {
+                // Entries outside of the manifest are VERIFIED, but without signers
+                report.add(entry.name(), data.signers != null ? SecureJar.Status.VERIFIED : SecureJar.Status.NONE);
+            }
+        }
+        return report.build();
     }
 
     SecureJar.Status getFileStatus(String name) {
@@ -77,6 +466,12 @@ public class JarSigningData {
     @Nullable
     Attributes getTrustedManifestEntries(Manifest manifest, String name) {
         var manattrs = manifest.getAttributes(name);
+        int entry = digests == null ? -1 : digests.indexOf(name);
+        if (entry >= 0 && digests.firstDigest(entry) != digests.endDigest(entry)) {
+            // Put back the digests that were moved out of the manifest
+            manattrs = manattrs == null ? new Attributes() : new Attributes(manattrs);
+            digests.addDigestAttributes(entry, manattrs);
+        }
         var mansigners = getManifestSigners();
         var objsigners = getData(name).map(sd->sd.signers).orElse(EMPTY_CODESIGNERS);
         if (mansigners == null || (mansigners.length == objsigners.length)) {
@@ -87,7 +482,8 @@ public class JarSigningData {
     }
 
     boolean hasSecurityData() {
-        return !pendingSigners.isEmpty() || !this.verifiedSigners.isEmpty();
+        awaitSignatures();
+        return hasSecurityData;
     }
 
     private Optional<StatusData> getData(final String name) {
@@ -95,18 +491,26 @@ public class JarSigningData {
     }
 
     @Nullable
-    synchronized CodeSigner[] verifyAndGetSigners(Manifest manifest, String name, byte[] bytes) {
+    CodeSigner[] verifyAndGetSigners(String name, byte[] bytes) {
         if (!hasSecurityData()) return null;
-        if (statusData.containsKey(name)) return statusData.get(name).signers;
+        var data = statusData.get(name);
+        if (data == null) {
+            // Verification of a single entry runs at most once, while other entries can be verified concurrently
+            data = statusData.computeIfAbsent(name, n -> toStatusData(n, verifier.verify(digests, n, bytes)));
+        }
+        return data.signers;
+    }
 
-        var signers = verifier.verify(manifest, pendingSigners, verifiedSigners, name, bytes);
+    private StatusData complete(String name, @Nullable ManifestVerifier.EntryDigester digester) {
+        return toStatusData(name, verifier.complete(digester));
+    }
+
+    private StatusData toStatusData(String name, @Nullable Optional<CodeSigner[]> signers) {
         if (signers == null) {
-            StatusData.add(name, SecureJar.Status.INVALID, null, this);
-            return null;
+            return new StatusData(name, SecureJar.Status.INVALID, null);
         } else {
-            var ret = signers.orElse(null);
-            StatusData.add(name, SecureJar.Status.VERIFIED, ret, this);
-            return ret;
+            if (verifiedDigestCache != null) verifiedDigestCache.add(name);
+            return new StatusData(name, SecureJar.Status.VERIFIED, signers.orElse(null));
         }
     }
 }
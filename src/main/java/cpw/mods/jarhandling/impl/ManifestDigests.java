@@ -0,0 +1,182 @@
+package cpw.mods.jarhandling.impl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.security.CodeSigner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Compact table of the per-entry digests listed in the manifest of a signed jar, and of the signers of each entry.
+ *
+ * <p>A {@link Manifest} keeps one {@link Attributes} section per entry, with a map and Base64 strings in each.
+ * For jars with many entries that adds up, and the manifest is retained for as long as the jar is open.
+ * This table keeps the sorted entry names, the decoded digests in a single byte array,
+ * and every distinct {@link CodeSigner} array only once.
+ */
+final class ManifestDigests {
+    private static final Base64.Decoder BASE64D = Base64.getDecoder();
+    private static final Base64.Encoder BASE64E = Base64.getEncoder();
+    private static final String DIGEST_SUFFIX = "-digest";
+
+    // Sorted, looked up with a binary search
+    private final String[] names;
+    // Digests of entry i are firstDigest[i] until firstDigest[i + 1]
+    private final int[] firstDigest;
+    // Per digest: index into keys, and the start of its bytes; it ends where the next digest starts
+    private final byte[] digestKeys;
+    private final int[] digestOffsets;
+    private final byte[] digestBytes;
+    // Original attribute names (e.g. SHA-256-Digest), and the matching algorithm names (e.g. sha-256)
+    private final String[] keys;
+    private final String[] algorithms;
+    // Per entry: index into signerSets, or -1 if nobody signed the entry. Filled in by setSigners.
+    private final int[] signerIndex;
+    private CodeSigner[][] signerSets = new CodeSigner[0][];
+
+    private ManifestDigests(String[] names, int[] firstDigest, byte[] digestKeys, int[] digestOffsets, byte[] digestBytes,
+                            String[] keys) {
+        this.names = names;
+        this.firstDigest = firstDigest;
+        this.digestKeys = digestKeys;
+        this.digestOffsets = digestOffsets;
+        this.digestBytes = digestBytes;
+        this.keys = keys;
+        this.algorithms = Arrays.stream(keys)
+                .map(k -> k.substring(0, k.length() - DIGEST_SUFFIX.length()).toLowerCase(Locale.ENGLISH))
+                .toArray(String[]::new);
+        this.signerIndex = new int[names.length];
+        Arrays.fill(this.signerIndex, -1);
+    }
+
+    /**
+     * Builds the table from the entry sections of a manifest, and removes the digests from those sections.
+     * Sections that only held digests are removed entirely.
+     * The table has no signers until {@link #setSigners} is called.
+     */
+    static ManifestDigests strip(Manifest manifest) {
+        var names = new TreeSet<>(manifest.getEntries().keySet()).toArray(String[]::new);
+
+        var firstDigest = new int[names.length + 1];
+        var digestKeys = new ByteArrayOutputStream();
+        var digestOffsets = new ArrayList<Integer>();
+        var digestBytes = new ByteArrayOutputStream();
+        var keys = new ArrayList<String>();
+
+        for (int i = 0; i < names.length; i++) {
+            firstDigest[i] = digestOffsets.size();
+            var attributes = manifest.getEntries().get(names[i]);
+            if (attributes != null) {
+                var iterator = attributes.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    var attribute = iterator.next();
+                    var key = attribute.getKey().toString();
+                    if (!key.toLowerCase(Locale.ENGLISH).endsWith(DIGEST_SUFFIX)) continue;
+
+                    int keyIndex = keys.indexOf(key);
+                    if (keyIndex == -1) {
+                        if (keys.size() == 256) throw new IllegalStateException("Too many digest algorithms in manifest: " + keys);
+                        keyIndex = keys.size();
+                        keys.add(key);
+                    }
+                    digestKeys.write(keyIndex);
+                    digestOffsets.add(digestBytes.size());
+                    digestBytes.writeBytes(BASE64D.decode((String) attribute.getValue()));
+                    iterator.remove();
+                }
+                if (attributes.isEmpty()) manifest.getEntries().remove(names[i]);
+            }
+        }
+        firstDigest[names.length] = digestOffsets.size();
+        digestOffsets.add(digestBytes.size());
+
+        return new ManifestDigests(names, firstDigest, digestKeys.toByteArray(),
+                digestOffsets.stream().mapToInt(Integer::intValue).toArray(), digestBytes.toByteArray(),
+                keys.toArray(String[]::new));
+    }
+
+    /**
+     * Sets the signers of each entry, as read from the signature block.
+     * Must happen before the table is shared with other threads.
+     */
+    void setSigners(Map<String, CodeSigner[]> signers) {
+        var signerSets = new ArrayList<CodeSigner[]>();
+        // CodeSigner implements equals, so identical arrays can be shared
+        var signerSetIndex = new HashMap<List<CodeSigner>, Integer>();
+        signers.forEach((name, entrySigners) -> {
+            int entry = indexOf(name);
+            if (entry < 0) return; // Signed, but without digests to check it against
+            signerIndex[entry] = signerSetIndex.computeIfAbsent(List.of(entrySigners), k -> {
+                signerSets.add(entrySigners);
+                return signerSets.size() - 1;
+            });
+        });
+        this.signerSets = signerSets.toArray(CodeSigner[][]::new);
+    }
+
+    /**
+     * {@return the index of an entry, or a negative value if the manifest has no section for it}
+     */
+    int indexOf(String name) {
+        return Arrays.binarySearch(names, name);
+    }
+
+    int firstDigest(int entry) {
+        return firstDigest[entry];
+    }
+
+    int endDigest(int entry) {
+        return firstDigest[entry + 1];
+    }
+
+    /**
+     * {@return the lowercase algorithm of a digest, e.g. sha-256}
+     */
+    String algorithm(int digest) {
+        return algorithms[Byte.toUnsignedInt(digestKeys[digest])];
+    }
+
+    byte[] expected(int digest) {
+        return Arrays.copyOfRange(digestBytes, digestOffsets[digest], digestOffsets[digest + 1]);
+    }
+
+    boolean matches(int digest, byte[] actual) {
+        return Arrays.equals(digestBytes, digestOffsets[digest], digestOffsets[digest + 1], actual, 0, actual.length);
+    }
+
+    @Nullable
+    CodeSigner[] signers(int entry) {
+        int index = signerIndex[entry];
+        return index == -1 ? null : signerSets[index];
+    }
+
+    /**
+     * {@return every distinct array of signers}
+     */
+    Collection<CodeSigner[]> signerSets() {
+        return Arrays.asList(signerSets);
+    }
+
+    boolean hasSigners() {
+        return signerSets.length > 0;
+    }
+
+    /**
+     * Adds the digests of an entry back to its attributes, as they were in the manifest.
+     */
+    void addDigestAttributes(int entry, Attributes attributes) {
+        for (int digest = firstDigest[entry]; digest < firstDigest[entry + 1]; digest++) {
+            attributes.putValue(keys[Byte.toUnsignedInt(digestKeys[digest])], BASE64E.encodeToString(expected(digest)));
+        }
+    }
+}
@@ -1,84 +1,141 @@
 package cpw.mods.jarhandling.impl;
 
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
 import java.security.CodeSigner;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.jar.Attributes;
-import java.util.jar.Manifest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 class ManifestVerifier {
     private static final boolean DEBUG = Boolean.parseBoolean(System.getProperty("securejarhandler.debugVerifier", "false"));
 
-    private static final Base64.Decoder BASE64D = Base64.getDecoder();
-    private final Map<String, MessageDigest> HASHERS = new HashMap<>();
-    private MessageDigest getHasher(String name) {
-        return HASHERS.computeIfAbsent(name.toLowerCase(Locale.ENGLISH), k -> {
-            try {
-                return MessageDigest.getInstance(k);
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
+    // MessageDigests are not thread safe, so each verification borrows its own from a shared pool
+    private static final Map<String, Queue<MessageDigest>> HASHERS = new ConcurrentHashMap<>();
+
+    private static MessageDigest acquireHasher(String algorithm) {
+        var hasher = HASHERS.computeIfAbsent(algorithm, k -> new ConcurrentLinkedQueue<>()).poll();
+        if (hasher != null) return hasher;
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void releaseHasher(String algorithm, MessageDigest hasher) {
+        hasher.reset();
+        HASHERS.get(algorithm).offer(hasher);
+    }
+
+    /**
+     * Digests an entry while it is being read, with every algorithm listed in its manifest section.
+     */
+    static final class EntryDigester {
+        private final ManifestDigests digests;
+        private final int entry;
+        private final MessageDigest[] hashers;
+
+        private EntryDigester(ManifestDigests digests, int entry) {
+            this.digests = digests;
+            this.entry = entry;
+            int first = digests.firstDigest(entry);
+            this.hashers = new MessageDigest[digests.endDigest(entry) - first];
+            for (int i = 0; i < hashers.length; i++) {
+                hashers[i] = acquireHasher(digests.algorithm(first + i));
+            }
+        }
+
+        void update(byte[] data, int offset, int length) {
+            for (var hasher : hashers) {
+                hasher.update(data, offset, length);
+            }
+        }
+
+        void update(ByteBuffer data) {
+            for (var hasher : hashers) {
+                hasher.update(data.duplicate());
+            }
+        }
+
+        /**
+         * {@return whether all digests match the manifest} The digester cannot be used afterwards.
+         * If it is never finished, for example because reading failed, its hashers are simply not pooled again.
+         */
+        private boolean finish() {
+            boolean matches = true;
+            int first = digests.firstDigest(entry);
+            for (int i = 0; i < hashers.length; i++) {
+                var algorithm = digests.algorithm(first + i);
+                byte[] actual = hashers[i].digest();
+                releaseHasher(algorithm, hashers[i]);
+                if (DEBUG) {
+                    log("[SJH]   " + algorithm + " Expected: " + SecureJarVerifier.toHexString(digests.expected(first + i)));
+                    log("[SJH]   " + algorithm + " Actual:   " + SecureJarVerifier.toHexString(actual));
+                }
+                matches &= digests.matches(first + i, actual);
             }
-        });
+            if (!matches && DEBUG)
+                log("[SJH]   Failed: Invalid hashes");
+            return matches;
+        }
     }
 
-    private void log(String line) {
+    private static void log(String line) {
         System.out.println(line);
     }
 
     /**
-     * This is Dumb API, but it's a package private class so la-de-da!
+     * Starts verifying an entry, by looking up the digests its manifest section expects.
      * return:
-     *   null - Something went wrong, digests were not verified.
-     *   Optional.empty() - No signatures to verify, missing *-Digest entry in manifest, or nobody signed that particular entry
-     *   Optional.isPresent() - code signers!
+     *   null - Nothing to digest: no manifest entry or no *-Digest in it. {@link #complete} then returns Optional.empty().
+     *   otherwise - a digester to feed the entry bytes into, before passing it to {@link #complete}
      */
-    Optional<CodeSigner[]> verify(final Manifest manifest, final Map<String, CodeSigner[]> pending,
-                                  final Map<String, CodeSigner[]> verified, final String name, final byte[] data) {
+    @Nullable
+    EntryDigester startDigest(final ManifestDigests digests, final String name) {
         if (DEBUG)
             log("[SJH] Verifying: " + name);
-        Attributes attr = manifest.getAttributes(name);
-        if (attr == null) {
+        int entry = digests.indexOf(name);
+        if (entry < 0) {
             if (DEBUG)
                 log("[SJH]   No Manifest Entry");
-            return Optional.empty();
+            return null;
         }
-
-        record Expected(MessageDigest hash, byte[] value){};
-        var expected = new ArrayList<Expected>();
-        attr.forEach((k,v) -> {
-            var key = k.toString();
-            if (key.toLowerCase(Locale.ENGLISH).endsWith("-digest")) {
-                var algo = key.substring(0, key.length() - 7);
-                var hash = BASE64D.decode((String)v);
-                expected.add(new Expected(getHasher(algo), hash));
-            }
-        });
-        if (expected.isEmpty()) {
+        if (digests.firstDigest(entry) == digests.endDigest(entry)) {
             if (DEBUG)
                 log("[SJH]   No Manifest Hashes");
-            return Optional.empty();
+            return null;
         }
+        return new EntryDigester(digests, entry);
+    }
 
-        for (var exp : expected) {
-            synchronized (exp.hash()) {
-                exp.hash().reset();
-                byte[] actual = exp.hash().digest(data);
-                if (DEBUG) {
-                    log("[SJH]   " + exp.hash().getAlgorithm() + " Expected: " + SecureJarVerifier.toHexString(exp.value()));
-                    log("[SJH]   " + exp.hash().getAlgorithm() + " Actual:   " + SecureJarVerifier.toHexString(actual));
-                }
-                if (!Arrays.equals(exp.value(), actual)) {
-                    if (DEBUG)
-                        log("[SJH]   Failed: Invalid hashes");
-                    return null;
-                }
-            }
-        }
+    /**
+     * Finishes verifying an entry, once all of its bytes went through the digester from {@link #startDigest}.
+     * Safe to call concurrently.
+     * return:
+     *   null - Something went wrong, digests were not verified.
+     *   Optional.empty() - No signatures to verify, missing *-Digest entry in manifest, or nobody signed that particular entry
+     *   Optional.isPresent() - code signers!
+     */
+    Optional<CodeSigner[]> complete(@Nullable final EntryDigester digester) {
+        if (digester == null)
+            return Optional.empty();
+        if (!digester.finish())
+            return null;
+        return Optional.ofNullable(digester.digests.signers(digester.entry));
+    }
 
-        var signers = pending.remove(name);
-        if (signers != null)
-            verified.put(name, signers);
-        return Optional.ofNullable(signers);
+    /**
+     * This is Dumb API, but it's a package private class so la-de-da!
+     * Same as {@link #startDigest} and {@link #complete}, for bytes that were already read.
+     */
+    Optional<CodeSigner[]> verify(final ManifestDigests digests, final String name, final byte[] data) {
+        var digester = startDigest(digests, name);
+        if (digester != null)
+            digester.update(data, 0, data.length);
+        return complete(digester);
     }
 }
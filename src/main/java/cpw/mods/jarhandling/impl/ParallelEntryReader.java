@@ -0,0 +1,89 @@
+package cpw.mods.jarhandling.impl;
+
+import cpw.mods.jarhandling.JarContents;
+import cpw.mods.niofs.union.UnionFileSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads a list of {@link UnionFileSystem.Entry entries} in parallel, but hands them to a visitor in order.
+ *
+ * <p>At most {@link #MAX_IN_FLIGHT} files are read ahead of the visitor, which bounds memory use when the visitor is slow.
+ * Buffers are only touched by the visiting thread, and are reused as soon as the visitor returns.
+ */
+class ParallelEntryReader {
+    private static final int MAX_IN_FLIGHT = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int MIN_BUFFER_SIZE = 8192;
+
+    private record Pending(UnionFileSystem.Entry entry, ByteBuffer buffer, CompletableFuture<Void> read) {}
+
+    private final Deque<ByteBuffer> pool = new ArrayDeque<>();
+
+    static void readAll(List<UnionFileSystem.Entry> entries, Executor executor, JarContents.EntryVisitor visitor) throws IOException {
+        new ParallelEntryReader().run(entries, executor, visitor);
+    }
+
+    private void run(List<UnionFileSystem.Entry> entries, Executor executor, JarContents.EntryVisitor visitor) throws IOException {
+        Deque<Pending> inFlight = new ArrayDeque<>(MAX_IN_FLIGHT);
+        int next = 0;
+        try {
+            while (next < entries.size() || !inFlight.isEmpty()) {
+                while (next < entries.size() && inFlight.size() < MAX_IN_FLIGHT) {
+                    var entry = entries.get(next++);
+                    var buffer = acquire(entry);
+                    inFlight.add(new Pending(entry, buffer, CompletableFuture.runAsync(() -> read(entry, buffer), executor)));
+                }
+
+                var head = inFlight.remove();
+                try {
+                    head.read().join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof UncheckedIOException ioe) throw ioe.getCause();
+                    throw e;
+                }
+                visitor.visit(head.entry().name(), head.buffer());
+                pool.push(head.buffer());
+            }
+        } finally {
+            // Don't return while reads are still running, the caller might close the jar
+            for (var pending : inFlight) {
+                pending.read().exceptionally(t -> null).join();
+            }
+        }
+    }
+
+    private ByteBuffer acquire(UnionFileSystem.Entry entry) throws IOException {
+        if (entry.size() > Integer.MAX_VALUE - 8) {
+            throw new IOException("File is too large to be read into a buffer: " + entry.name());
+        }
+        var size = (int) entry.size();
+        for (var it = pool.iterator(); it.hasNext(); ) {
+            var buffer = it.next();
+            if (buffer.capacity() >= size) {
+                it.remove();
+                return buffer.clear().limit(size);
+            }
+        }
+        return ByteBuffer.allocate(Math.max(size, MIN_BUFFER_SIZE)).limit(size);
+    }
+
+    private static void read(UnionFileSystem.Entry entry, ByteBuffer buffer) {
+        try (var channel = Files.newByteChannel(entry.realPath())) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading
+            }
+            buffer.flip();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package cpw.mods.jarhandling.impl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSigner;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * The signature block and {@code .SF} file of a jar with a single signer,
+ * split into the parts that only depend on the signer and the parts that are specific to the jar.
+ *
+ * <p>{@link java.util.jar.JarVerifier} parses and checks the certificates of every signature block it reads,
+ * even if another jar had the same signer. The {@link SignerCache} keeps the signers it derived by {@link #signerKey()},
+ * a digest of the certificates, the signer and the algorithms. A jar with a known signer only has its own parts checked here:
+ * the signature over its {@code .SF} file, and the digest of the whole manifest listed in that file.
+ *
+ * <p>Only the common case is handled: one DER encoded signer without a timestamp,
+ * and a {@code .SF} file with a digest of the whole manifest. Anything else is left to the {@link java.util.jar.JarVerifier}.
+ */
+final class SignatureBlock {
+    private static final String SIGNED_DATA = "1.2.840.113549.1.7.2";
+    private static final String RSA_ENCRYPTION = "1.2.840.113549.1.1.1";
+    private static final String MESSAGE_DIGEST = "1.2.840.113549.1.9.4";
+    private static final String SIGNING_TIME = "1.2.840.113549.1.9.5";
+    private static final String DIGEST_MANIFEST_SUFFIX = "-DIGEST-MANIFEST";
+    // The algorithms that every JDK allows for signed jars
+    private static final Set<String> MANIFEST_DIGESTS = Set.of("SHA-256", "SHA-384", "SHA-512");
+    private static final byte[] NOTHING = new byte[0];
+
+    private final String signerKey;
+    private final byte[] signatureFile;
+    private final String manifestDigestAlgorithm;
+    private final byte[] manifestDigest;
+    private final List<String> signedEntries;
+    private final String digestAlgorithm;
+    private final String signatureAlgorithm;
+    // DER encoded with the SET tag they are signed with, or null if the signature is over the .SF file itself
+    @Nullable
+    private final byte[] signedAttributes;
+    @Nullable
+    private final byte[] messageDigest;
+    private final byte[] signature;
+
+    private SignatureBlock(String signerKey, byte[] signatureFile, String manifestDigestAlgorithm, byte[] manifestDigest,
+                           List<String> signedEntries, String digestAlgorithm, String signatureAlgorithm,
+                           @Nullable byte[] signedAttributes, @Nullable byte[] messageDigest, byte[] signature) {
+        this.signerKey = signerKey;
+        this.signatureFile = signatureFile;
+        this.manifestDigestAlgorithm = manifestDigestAlgorithm;
+        this.manifestDigest = manifestDigest;
+        this.signedEntries = signedEntries;
+        this.digestAlgorithm = digestAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signedAttributes = signedAttributes;
+        this.messageDigest = messageDigest;
+        this.signature = signature;
+    }
+
+    /**
+     * {@return whether the entry is a file that {@link java.util.jar.JarVerifier} reads signatures from}
+     */
+    static boolean isSignatureFile(String name) {
+        var uname = name.toUpperCase(Locale.ENGLISH);
+        if (!uname.startsWith("META-INF/") || uname.indexOf('/', 9) >= 0) return false;
+        return uname.endsWith(".SF") || isBlock(uname) || uname.startsWith("META-INF/SIG-");
+    }
+
+    private static boolean isBlock(String uname) {
+        return uname.endsWith(".RSA") || uname.endsWith(".DSA") || uname.endsWith(".EC");
+    }
+
+    /**
+     * Parses the signature files of a jar, as found by {@link #isSignatureFile}.
+     * {@return the signature block, or {@code null} if the jar is not signed by exactly one signer in the way this class handles}
+     */
+    @Nullable
+    static SignatureBlock parse(Map<String, byte[]> files) {
+        if (files.size() != 2) return null;
+        byte[] sf = null, block = null;
+        String sfBase = null, blockBase = null;
+        for (var file : files.entrySet()) {
+            var uname = file.getKey().toUpperCase(Locale.ENGLISH);
+            int extension = uname.lastIndexOf('.');
+            var base = extension < 0 ? uname : uname.substring(0, extension);
+            if (uname.endsWith(".SF")) {
+                sf = file.getValue();
+                sfBase = base;
+            } else if (isBlock(uname)) {
+                block = file.getValue();
+                blockBase = base;
+            }
+        }
+        if (sf == null || block == null || !sfBase.equals(blockBase)) return null;
+        try {
+            return parse(sf, block);
+        } catch (IllegalArgumentException | IOException e) {
+            return null; // Malformed, the JarVerifier will report it
+        }
+    }
+
+    @Nullable
+    private static SignatureBlock parse(byte[] sf, byte[] block) throws IOException {
+        var key = new SignerCache.KeyBuilder();
+
+        // The .SF file: the digest of the whole manifest, and the entries it signs
+        var sfManifest = new Manifest(new ByteArrayInputStream(sf));
+        // The JarVerifier ignores other versions
+        if (!"1.0".equalsIgnoreCase(sfManifest.getMainAttributes().getValue(Attributes.Name.SIGNATURE_VERSION))) return null;
+        String manifestDigestAlgorithm = null;
+        byte[] manifestDigest = null;
+        for (var attribute : sfManifest.getMainAttributes().entrySet()) {
+            var name = attribute.getKey().toString().toUpperCase(Locale.ENGLISH);
+            if (!name.endsWith(DIGEST_MANIFEST_SUFFIX)) continue;
+            if (manifestDigestAlgorithm != null) return null;
+            manifestDigestAlgorithm = name.substring(0, name.length() - DIGEST_MANIFEST_SUFFIX.length());
+            manifestDigest = Base64.getMimeDecoder().decode(attribute.getValue().toString());
+        }
+        if (manifestDigestAlgorithm == null || !MANIFEST_DIGESTS.contains(manifestDigestAlgorithm)) return null;
+        key.add("manifestDigest", manifestDigestAlgorithm.getBytes(StandardCharsets.UTF_8));
+        var signedEntries = new ArrayList<String>(sfManifest.getEntries().size());
+        for (var name : sfManifest.getEntries().keySet()) {
+            // Same as SignatureFileVerifier
+            if (name.startsWith("./")) name = name.substring(2);
+            if (name.startsWith("/")) name = name.substring(1);
+            signedEntries.add(name);
+        }
+
+        // ContentInfo, with SignedData: version, digestAlgorithms, encapContentInfo, certificates and signerInfos, without CRLs
+        var contentInfo = Der.read(block, 0, block.length).children();
+        if (contentInfo.size() != 2 || !contentInfo.get(0).oid().equals(SIGNED_DATA) || contentInfo.get(1).tag != 0xA0) return null;
+        var explicit = contentInfo.get(1).children();
+        if (explicit.size() != 1) return null;
+        var signedData = explicit.get(0).children();
+        if (signedData.size() != 5 || signedData.get(3).tag != 0xA0 || signedData.get(4).tag != 0x31) return null;
+        // Detached, the signed content is the .SF file
+        if (signedData.get(2).children().size() != 1) return null;
+        for (int i = 0; i < 4; i++) key.add("signedData", signedData.get(i).encoded());
+
+        // SignerInfo: version, sid, digestAlgorithm, signedAttrs, signatureAlgorithm and signature, without unsignedAttrs (timestamps)
+        var signerInfos = signedData.get(4).children();
+        if (signerInfos.size() != 1) return null;
+        var signerInfo = signerInfos.get(0).children();
+        Der signedAttributes = null;
+        if (signerInfo.size() == 6 && signerInfo.get(3).tag == 0xA0) {
+            signedAttributes = signerInfo.get(3);
+        } else if (signerInfo.size() != 5) {
+            return null;
+        }
+        var signatureAlgorithm = signerInfo.get(signerInfo.size() - 2);
+        var signature = signerInfo.get(signerInfo.size() - 1);
+        if (signature.tag != 0x04) return null;
+        for (var part : List.of(signerInfo.get(0), signerInfo.get(1), signerInfo.get(2), signatureAlgorithm)) {
+            key.add("signerInfo", part.encoded());
+        }
+
+        // Everything but the digest of the .SF file and the signing time is the same for every jar of a signer
+        byte[] messageDigest = null;
+        byte[] signedBytes = null;
+        if (signedAttributes != null) {
+            for (var attribute : signedAttributes.children()) {
+                var parts = attribute.children();
+                if (parts.size() != 2) return null;
+                var type = parts.get(0).oid();
+                if (type.equals(MESSAGE_DIGEST)) {
+                    var values = parts.get(1).children();
+                    if (messageDigest != null || values.size() != 1 || values.get(0).tag != 0x04) return null;
+                    messageDigest = values.get(0).content();
+                    key.add(type, NOTHING);
+                } else {
+                    key.add(type, type.equals(SIGNING_TIME) ? NOTHING : parts.get(1).encoded());
+                }
+            }
+            if (messageDigest == null) return null;
+            signedBytes = signedAttributes.encoded();
+            signedBytes[0] = 0x31;
+        }
+
+        return new SignatureBlock(key.build(), sf, manifestDigestAlgorithm, manifestDigest, List.copyOf(signedEntries),
+                signerInfo.get(2).children().get(0).oid(), signatureAlgorithm.children().get(0).oid(),
+                signedBytes, messageDigest, signature.content());
+    }
+
+    /**
+     * {@return the digest of everything in the signature block that is the same for every jar of the signer}
+     */
+    String signerKey() {
+        return signerKey;
+    }
+
+    /**
+     * Checks the parts of the signature that are specific to the jar, for a signer that the {@link java.util.jar.JarVerifier}
+     * already accepted with the same {@link #signerKey()}.
+     *
+     * @param manifest the bytes of the manifest of the jar
+     * @param signers  the signers that the JarVerifier derived from the signature block
+     * @return the signers of each entry, as the JarVerifier would report them, or {@code null} if the jar has to be left to it
+     */
+    @Nullable
+    Map<String, CodeSigner[]> verify(byte[] manifest, CodeSigner[] signers) {
+        try {
+            if (!MessageDigest.isEqual(MessageDigest.getInstance(manifestDigestAlgorithm).digest(manifest), manifestDigest)) return null;
+            var digest = MessageDigest.getInstance(digestAlgorithm);
+            if (messageDigest != null && !MessageDigest.isEqual(digest.digest(signatureFile), messageDigest)) return null;
+
+            var verifier = Signature.getInstance(signatureAlgorithm.equals(RSA_ENCRYPTION)
+                    ? digest.getAlgorithm().replace("-", "") + "withRSA" : signatureAlgorithm);
+            verifier.initVerify(signers[0].getSignerCertPath().getCertificates().get(0));
+            verifier.update(signedAttributes != null ? signedAttributes : signatureFile);
+            if (!verifier.verify(signature)) return null;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return null;
+        }
+
+        var entries = new HashMap<String, CodeSigner[]>(signedEntries.size() * 4 / 3 + 1);
+        signedEntries.forEach(name -> entries.put(name, signers));
+        return entries;
+    }
+
+    /**
+     * A DER encoded value: the tag, and where it and its contents start and end in the data.
+     * Tags are a single byte and lengths at most three, which is all that signature blocks use.
+     */
+    private record Der(byte[] data, int tag, int start, int offset, int end) {
+        static Der read(byte[] data, int start, int limit) {
+            if (limit - start < 2) throw new IllegalArgumentException("Truncated DER value");
+            int tag = data[start] & 0xFF;
+            if ((tag & 0x1F) == 0x1F) throw new IllegalArgumentException("Unsupported DER tag");
+            int offset = start + 2;
+            int length = data[start + 1] & 0xFF;
+            if (length >= 0x80) {
+                int bytes = length & 0x7F;
+                // No indefinite lengths, which are not DER
+                if (bytes == 0 || bytes > 3 || limit - offset < bytes) throw new IllegalArgumentException("Unsupported DER length");
+                length = 0;
+                for (int i = 0; i < bytes; i++) length = (length << 8) | (data[offset++] & 0xFF);
+            }
+            if (length > limit - offset) throw new IllegalArgumentException("Truncated DER value");
+            return new Der(data, tag, start, offset, offset + length);
+        }
+
+        List<Der> children() {
+            var children = new ArrayList<Der>();
+            for (int pos = offset; pos < end; pos = children.get(children.size() - 1).end) {
+                children.add(read(data, pos, end));
+            }
+            return children;
+        }
+
+        byte[] content() {
+            return Arrays.copyOfRange(data, offset, end);
+        }
+
+        byte[] encoded() {
+            return Arrays.copyOfRange(data, start, end);
+        }
+
+        String oid() {
+            if (tag != 0x06 || offset == end || (data[end - 1] & 0x80) != 0) throw new IllegalArgumentException("Not an OID");
+            var oid = new StringBuilder();
+            long value = 0;
+            for (int i = offset; i < end; i++) {
+                value = (value << 7) | (data[i] & 0x7F);
+                if ((data[i] & 0x80) != 0) {
+                    if (value > Integer.MAX_VALUE) throw new IllegalArgumentException("OID too large");
+                    continue;
+                }
+                if (oid.isEmpty()) {
+                    int first = (int) Math.min(value / 40, 2);
+                    oid.append(first).append('.').append(value - first * 40L);
+                } else {
+                    oid.append('.').append(value);
+                }
+                value = 0;
+            }
+            return oid.toString();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package cpw.mods.jarhandling.impl;
+
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSigner;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache of the signers that {@link java.util.jar.JarVerifier} derived from a jar's signature files.
+ *
+ * <p>The signers only depend on the bytes of the manifest, the {@code .SF} files and the signature blocks,
+ * so the result is keyed by a digest of those. Opening a jar with the same signature files again,
+ * which happens when the same jar is opened by several layers, skips parsing and validating the signature blocks.
+ *
+ * <p>The {@code .SF} file and the signature in the block are different for every jar, but the certificates are not.
+ * The signers derived from a block are also kept by its {@link SignatureBlock#signerKey()},
+ * so that other jars of the same signer only have their own signature checked, see {@link SignatureBlock}.
+ * Equal {@link CodeSigner} arrays are also shared by all jars, instead of every jar keeping its own copies.
+ */
+final class SignerCache {
+    /**
+     * The signers of a jar.
+     *
+     * @param entries  the signers of each entry that the signature files cover
+     * @param manifest the signers of the manifest, or {@code null} if it is not signed
+     */
+    record Signers(Map<String, CodeSigner[]> entries, @Nullable CodeSigner[] manifest) {}
+
+    // Soft, since an entry holds the names of all signed entries of a jar, and is only useful if the jar is opened again
+    private static final Map<String, SoftReference<Signers>> RESULTS = new ConcurrentHashMap<>();
+    // CodeSigner implements equals, so equal arrays can be shared; there are only ever a few distinct ones
+    private static final Map<List<CodeSigner>, CodeSigner[]> SIGNER_ARRAYS = new ConcurrentHashMap<>();
+    // Strong, since there are only ever a few signers
+    private static final Map<String, CodeSigner[]> BLOCK_SIGNERS = new ConcurrentHashMap<>();
+    private static final AtomicInteger blockHits = new AtomicInteger();
+
+    private SignerCache() {}
+
+    /**
+     * Digests the signature files of a jar into a cache key.
+     */
+    static final class KeyBuilder {
+        private final MessageDigest digest;
+
+        KeyBuilder() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        KeyBuilder add(String name, byte[] bytes) {
+            var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            updateLength(nameBytes.length);
+            digest.update(nameBytes);
+            updateLength(bytes.length);
+            digest.update(bytes);
+            return this;
+        }
+
+        // Lengths first, so that no two different lists of files digest the same
+        private void updateLength(int length) {
+            digest.update((byte) (length >>> 24));
+            digest.update((byte) (length >>> 16));
+            digest.update((byte) (length >>> 8));
+            digest.update((byte) length);
+        }
+
+        String build() {
+            return SecureJarVerifier.toHexString(digest.digest());
+        }
+    }
+
+    @Nullable
+    static Signers get(String key) {
+        var ref = RESULTS.get(key);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Caches the signers read from a jar.
+     * {@return the signers, with equal arrays replaced by the instances shared with other jars}
+     */
+    static Signers put(String key, Map<String, CodeSigner[]> entries, @Nullable CodeSigner[] manifest) {
+        var interned = new HashMap<String, CodeSigner[]>(entries.size() * 4 / 3 + 1);
+        entries.forEach((name, signers) -> interned.put(name, intern(signers)));
+        var result = new Signers(Map.copyOf(interned), manifest == null ? null : intern(manifest));
+        RESULTS.put(key, new SoftReference<>(result));
+        return result;
+    }
+
+    /**
+     * {@return the signers that the JarVerifier derived from a signature block with the given signer key, or {@code null}}
+     */
+    @Nullable
+    static CodeSigner[] getBlockSigners(String signerKey) {
+        var signers = BLOCK_SIGNERS.get(signerKey);
+        if (signers != null) blockHits.incrementAndGet();
+        return signers;
+    }
+
+    static void putBlockSigners(String signerKey, CodeSigner[] signers) {
+        BLOCK_SIGNERS.putIfAbsent(signerKey, intern(signers));
+    }
+
+    @VisibleForTesting
+    static int blockHits() {
+        return blockHits.get();
+    }
+
+    static CodeSigner[] intern(CodeSigner[] signers) {
+        return SIGNER_ARRAYS.computeIfAbsent(List.of(signers), k -> signers);
+    }
+}
@@ -0,0 +1,158 @@
+package cpw.mods.jarhandling.impl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSigner;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in on-disk record of the entries of a signed jar that already passed digest verification,
+ * so that a later launch can mark them as verified without hashing them again.
+ * Enabled by setting {@code securejarhandler.verifiedDigestCache} to a directory.
+ *
+ * <p>Every jar gets its own file, named after a SHA-256 of the raw jar bytes and of the certificates of its signers.
+ * Any change to the jar or to its signers therefore leads to a different file, and the old one is simply not used.
+ * The signature block itself is still validated on every launch, only the per-entry digests are skipped.
+ */
+final class VerifiedDigestCache {
+    private static final String PROPERTY = "securejarhandler.verifiedDigestCache";
+    private static final String HEADER = "# securejarhandler verified digests v1";
+    // Caches that may hold unsaved entries, saved at shutdown if the jar is never closed
+    private static final Set<VerifiedDigestCache> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (var cache : OPEN) {
+                try {
+                    cache.save();
+                } catch (IOException ignored) {
+                    // The cache is only an optimization, next launch will verify these entries again
+                }
+            }
+        }, "SecureJarHandler verified digest cache"));
+    }
+
+    private final Path file;
+    private final Set<String> loaded;
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+
+    private VerifiedDigestCache(Path file, Set<String> loaded) {
+        this.file = file;
+        this.loaded = loaded;
+    }
+
+    /**
+     * Opens the cache of a signed jar, or returns {@code null} if the cache is not enabled.
+     *
+     * @param jar     the signed jar file
+     * @param signers the signers of the entries of the jar, as read from its signature block
+     */
+    @Nullable
+    static VerifiedDigestCache open(Path jar, Collection<CodeSigner[]> signers) throws IOException {
+        var directory = System.getProperty(PROPERTY);
+        if (directory == null || directory.isEmpty()) return null;
+
+        var file = Paths.get(directory).resolve(computeKey(jar, signers) + ".txt");
+        var loaded = new TreeSet<String>();
+        if (Files.isRegularFile(file)) {
+            var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && HEADER.equals(lines.get(0))) {
+                loaded.addAll(lines.subList(1, lines.size()));
+            }
+        }
+        var cache = new VerifiedDigestCache(file, loaded);
+        OPEN.add(cache);
+        return cache;
+    }
+
+    private static String computeKey(Path jar, Collection<CodeSigner[]> signers) throws IOException {
+        var digest = sha256();
+        try (var is = Files.newInputStream(jar)) {
+            var buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        // Sorted, so the key does not depend on the order of the signers
+        var certificates = new TreeSet<String>();
+        try {
+            for (var array : signers) {
+                for (var signer : array) {
+                    for (Certificate certificate : signer.getSignerCertPath().getCertificates()) {
+                        certificates.add(SecureJarVerifier.toHexString(sha256().digest(certificate.getEncoded())));
+                    }
+                }
+            }
+        } catch (CertificateEncodingException e) {
+            throw new IOException("Failed to encode signer certificate of " + jar, e);
+        }
+        for (var certificate : certificates) {
+            digest.update(certificate.getBytes(StandardCharsets.US_ASCII));
+        }
+        return SecureJarVerifier.toHexString(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * {@return the entries that were verified by a previous launch}
+     */
+    Set<String> verifiedEntries() {
+        return loaded;
+    }
+
+    /**
+     * Records an entry whose digests were verified, to be saved with the next {@link #save()}.
+     */
+    void add(String name) {
+        // One entry per line, skip the odd name that would not survive that
+        if (!loaded.contains(name) && name.indexOf('\n') == -1 && name.indexOf('\r') == -1) {
+            verified.add(name);
+        }
+    }
+
+    /**
+     * Writes the cache file if new entries were verified since it was loaded.
+     */
+    void save() throws IOException {
+        OPEN.remove(this);
+        if (verified.isEmpty()) return;
+
+        var lines = new ArrayList<String>(loaded.size() + verified.size() + 1);
+        lines.add(HEADER);
+        var all = new TreeSet<>(loaded);
+        all.addAll(verified);
+        lines.addAll(all);
+
+        Files.createDirectories(file.getParent());
+        // Write to a temporary file first, so that concurrent launches never see a partial cache file
+        var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cpw.mods.niofs.union;
+
+/**
+ * A 128-bit key identifying the contents of a {@link UnionFileSystem}.
+ *
+ * @see UnionFileSystem#fingerprint()
+ */
+public record ContentFingerprint(long high, long low) {
+    /**
+     * {@return the fingerprint as 32 lowercase hex digits}
+     * This is stable across launches, and can be used in file names.
+     */
+    @Override
+    public String toString() {
+        return "%016x%016x".formatted(high, low);
+    }
+}
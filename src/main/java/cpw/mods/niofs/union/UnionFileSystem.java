@@ -9,23 +9,31 @@ import java.io.InputStream;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessMode;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.UserPrincipalLookupService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +44,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import java.util.zip.ZipFile;
 
 public class UnionFileSystem extends FileSystem {
     private static final MethodHandle ZIPFS_CH;
@@ -440,6 +449,142 @@ public class UnionFileSystem extends FileSystem {
         };
     }
 
+    /**
+     * A file found in one of the base paths of a {@link UnionFileSystem}.
+     *
+     * @param name         the path of the file relative to the root of the file system, separated by {@code /}
+     * @param size         the uncompressed size of the file
+     * @param crc          the CRC-32 of the file from the zip central directory, or {@code -1} if it is not stored in an archive
+     * @param lastModified the last modification time of the file in milliseconds since the epoch, or {@code -1} if unknown
+     * @param realPath     the file in the file system of its base path, which can be read without going through the union lookup
+     */
+    public record Entry(String name, long size, long crc, long lastModified, Path realPath) {}
+
+    /**
+     * Lists all the files of this file system.
+     *
+     * <p>Files are listed base path by base path, in search order.
+     * Files of an archive are listed in central directory order, so that reading them goes through the archive front to back.
+     * The zip file system does not expose that order, so the archive is opened again with {@link ZipFile},
+     * which reads its central directory a second time: a single read from the end of the file,
+     * far cheaper than reading the entries out of order.
+     * Files that are excluded by the {@linkplain #getFilesystemFilter() filter} (or whose parent directory is),
+     * or that are shadowed by the same file in an earlier base path, are skipped.
+     */
+    public List<Entry> listEntries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (var base : basepaths) {
+            var filter = new EntryFilter(base);
+            var efsm = embeddedFileSystems.get(base);
+            if (efsm == null) {
+                listDirectoryEntries(base, filter, seen, entries);
+            } else if (base.getFileSystem() == FileSystems.getDefault()) {
+                try (var zf = new ZipFile(base.toFile())) {
+                    var zipEntries = zf.entries();
+                    while (zipEntries.hasMoreElements()) {
+                        var ze = zipEntries.nextElement();
+                        var name = ze.getName();
+                        if (ze.isDirectory() || !filter.test(name) || !seen.add(name)) continue;
+                        entries.add(new Entry(name, ze.getSize(), ze.getCrc(), ze.getTime(), efsm.fs().getPath(name)));
+                    }
+                }
+            } else {
+                // Archive nested in another file system: ZipFile can't open it, so walk the zip file system instead
+                listDirectoryEntries(efsm.fs().getPath("/"), filter, seen, entries);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Computes a fingerprint of the contents of this file system, for use as a cache key.
+     *
+     * <p>The fingerprint covers the name, size and CRC-32 of every file {@linkplain #listEntries() listed} by this file system,
+     * or its modification time for files in directories. Archives therefore only need their central directory to be read.
+     * The fingerprint changes whenever a file is added, removed, modified or shadowed differently,
+     * but it is not a cryptographic hash of the contents.
+     */
+    public ContentFingerprint fingerprint() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        var buffer = ByteBuffer.allocate(3 * Long.BYTES);
+        var length = ByteBuffer.allocate(Integer.BYTES);
+        for (var entry : listEntries()) {
+            // Length-prefixed, so that no name can run into the fields of the entry before it
+            var name = entry.name().getBytes(StandardCharsets.UTF_8);
+            digest.update(length.clear().putInt(name.length).flip());
+            digest.update(name);
+            buffer.clear()
+                    .putLong(entry.size())
+                    .putLong(entry.crc())
+                    .putLong(entry.crc() < 0 ? entry.lastModified() : 0)
+                    .flip();
+            digest.update(buffer);
+        }
+        var hash = ByteBuffer.wrap(digest.digest());
+        return new ContentFingerprint(hash.getLong(), hash.getLong());
+    }
+
+    private static void listDirectoryEntries(Path root, EntryFilter filter, Set<String> seen, List<Entry> entries) throws IOException {
+        final var isZip = root.getFileSystem().provider().getScheme().equals("jar");
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                var name = relativeName(root, dir);
+                return name.isEmpty() || filter.testDirectory(name + '/') ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                var name = relativeName(root, file);
+                if (attrs.isRegularFile() && filter.test(name) && seen.add(name)) {
+                    var crc = isZip ? (long) Files.getAttribute(file, "zip:crc") : -1;
+                    entries.add(new Entry(name, attrs.size(), crc, attrs.lastModifiedTime().toMillis(), file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String relativeName(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Applies the file system filter to the entries of one base path,
+     * remembering the result for directories since all their files need to check them.
+     */
+    private class EntryFilter {
+        private final Path basePath;
+        private final Map<String, Boolean> directories = new HashMap<>();
+
+        private EntryFilter(Path basePath) {
+            this.basePath = basePath;
+        }
+
+        boolean test(String name) {
+            if (pathFilter == null) return true;
+            var slash = name.lastIndexOf('/');
+            return (slash < 0 || testDirectory(name.substring(0, slash + 1))) && pathFilter.test(name, basePath);
+        }
+
+        boolean testDirectory(String directory) {
+            if (pathFilter == null) return true;
+            var included = directories.get(directory);
+            if (included == null) {
+                var parentSlash = directory.lastIndexOf('/', directory.length() - 2);
+                included = (parentSlash < 0 || testDirectory(directory.substring(0, parentSlash + 1))) && pathFilter.test(directory, basePath);
+                directories.put(directory, included);
+            }
+            return included;
+        }
+    }
+
     /**
      * Create a relative UnionPath from the path elements of the given {@link Path}.
      */
@@ -25,16 +25,18 @@ import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiPredicate;
 import java.util.stream.Stream;
 
 public class UnionFileSystemProvider extends FileSystemProvider {
-    private final Map<String, UnionFileSystem> fileSystems = new HashMap<>();
-    private int index = 0;
+    // Concurrent, so that opening a file system never blocks other threads on the I/O of its constructor
+    private final Map<String, UnionFileSystem> fileSystems = new ConcurrentHashMap<>();
+    private final AtomicInteger index = new AtomicInteger();
 
     @Override
     public String getScheme() {
@@ -131,17 +133,15 @@ public class UnionFileSystemProvider extends FileSystemProvider {
                 .map(Path::normalize)
                 .toArray(Path[]::new);
 
-        synchronized (fileSystems) {
-            var ufs = new UnionFileSystem(this, pathfilter, key, normpaths);
-            fileSystems.put(key, ufs);
-            return ufs;
-        }
+        var ufs = new UnionFileSystem(this, pathfilter, key, normpaths);
+        fileSystems.put(key, ufs);
+        return ufs;
     }
 
-    private synchronized String makeKey(Path path) {
+    private String makeKey(Path path) {
         var key= (path instanceof UnionPath p) ? p.getFileSystem().getKey() :
                         path.toAbsolutePath().normalize().toUri().getPath();
-        return key.replace('!', '_') + "#" + index++;
+        return key.replace('!', '_') + "#" + index.getAndIncrement();
     }
 
     @Override
@@ -157,8 +157,9 @@ public class UnionFileSystemProvider extends FileSystemProvider {
     @Override
     public FileSystem getFileSystem(final URI uri) {
         var parts = uri.getPath().split("!");
-        if (!fileSystems.containsKey(parts[0])) throw new FileSystemNotFoundException();
-        return fileSystems.get(parts[0]);
+        var fs = fileSystems.get(parts[0]);
+        if (fs == null) throw new FileSystemNotFoundException();
+        return fs;
     }
 
     @Override
@@ -265,9 +266,7 @@ public class UnionFileSystemProvider extends FileSystemProvider {
     }
 
     void removeFileSystem(UnionFileSystem fs) {
-        synchronized (fileSystems) {
-            fileSystems.remove(fs.getKey());
-        }
+        fileSystems.remove(fs.getKey());
     }
 
     private class UnionBasicFileAttributeView implements BasicFileAttributeView {
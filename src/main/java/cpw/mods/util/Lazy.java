@@ -1,11 +1,33 @@
 package cpw.mods.util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+/**
+ * Thread-safe memoized value.
+ *
+ * <p>The provider is called at most once, even if multiple threads race to {@link #get()} the value.
+ * Once initialized, reads are a single acquire load and never take a lock.
+ * Initialization uses a {@link ReentrantLock} rather than a monitor, so a virtual thread waiting
+ * on a provider that does I/O does not pin its carrier thread.
+ */
 public class Lazy<T>
 {
+    // Marker stored in place of a null result, so that null can keep meaning "not initialized yet"
+    private static final Object NULL_VALUE = new Object();
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Lazy.class, "value", Object.class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     public static <T> Lazy<T> of() {
         return new Lazy<>((Supplier<T>) null);
@@ -21,58 +43,71 @@ public class Lazy<T>
         return new Lazy<T>(provider);
     }
 
-    private final Object lock = new Object();
-    private T value;
-    private Boolean initialized;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Either null (not initialized), NULL_VALUE, or the value itself. Accessed through VALUE.
+    @SuppressWarnings("unused")
+    private Object value;
     private final Supplier<T> provider;
 
     private Lazy(final T value)
     {
-        this.value = value;
-        this.initialized = true;
+        this.value = value == null ? NULL_VALUE : value;
         this.provider = () -> value;
     }
 
     private Lazy(final Supplier<T> provider)
     {
-        this.value = null;
-        this.initialized = false;
         this.provider = provider;
     }
 
     public T get()
     {
-        synchronized (lock) {
-            if (!initialized && provider != null) {
-                initialized = true;
-                this.value = provider.get();
-            }
+        var v = VALUE.getAcquire(this);
+        if (v == null) {
+            if (provider == null)
+                return null;
+            v = initialize();
+        }
+        return unwrap(v);
+    }
 
-            return value;
+    private Object initialize() {
+        lock.lock();
+        try {
+            var v = VALUE.getAcquire(this);
+            if (v == null) {
+                final T computed = provider.get();
+                v = computed == null ? NULL_VALUE : computed;
+                VALUE.setRelease(this, v);
+            }
+            return v;
+        } finally {
+            lock.unlock();
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static <T> T unwrap(Object v) {
+        return v == NULL_VALUE ? null : (T) v;
+    }
+
     public void ifPresent(final Consumer<T> consumer) {
-        synchronized (lock) {
-            if (!initialized)
-                return;
+        var v = VALUE.getAcquire(this);
+        if (v == null)
+            return;
 
-            consumer.accept(this.value);
-        }
+        consumer.accept(unwrap(v));
     }
 
     public <R> Lazy<R> map(Function<T, R> mapper) {
-        synchronized (lock) {
-            return of(() -> mapper.apply(get()));
-        }
+        return of(() -> mapper.apply(get()));
     }
 
     public T orElse(T elseValue) {
-        synchronized (lock) {
-            if (!initialized)
-                return elseValue;
+        var v = VALUE.getAcquire(this);
+        if (v == null)
+            return elseValue;
 
-            return value;
-        }
+        return unwrap(v);
     }
 }
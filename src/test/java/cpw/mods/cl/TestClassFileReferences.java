@@ -0,0 +1,86 @@
+package cpw.mods.cl;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestClassFileReferences {
+    private static byte[] classFile(String... classes) {
+        var cw = new ClassWriter(0);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "p/Main", null, "java/lang/Object", null);
+        // Only referred to by descriptors, which are not Class entries
+        cw.visitField(Opcodes.ACC_PUBLIC, "field", "Lp/FieldType;", null, null).visitEnd();
+        for (var name : classes) {
+            cw.newClass(name);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    @Test
+    void testClassesAndArrays() {
+        var names = ClassFileReferences.classNames(ByteBuffer.wrap(classFile("p/Plain", "[Lp/Element;", "[[Lp/Nested;", "[[I")));
+        assertAll(
+                () -> assertTrue(names.containsAll(List.of("p.Main", "java.lang.Object", "p.Plain")), names::toString),
+                () -> assertTrue(names.containsAll(List.of("p.Element", "p.Nested")), "Element classes of arrays"),
+                () -> assertFalse(names.stream().anyMatch(n -> n.startsWith("[")), "No array names"),
+                () -> assertFalse(names.contains("p.FieldType"), "Descriptors are not Class entries")
+        );
+    }
+
+    @Test
+    void testLongAndDoubleTakeTwoEntries() {
+        var cw = new ClassWriter(0);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "p/Main", null, "java/lang/Object", null);
+        cw.newConst(Long.MAX_VALUE);
+        cw.newConst(Math.PI);
+        cw.newClass("p/AfterWide");
+        cw.visitEnd();
+        var names = ClassFileReferences.classNames(ByteBuffer.wrap(cw.toByteArray()));
+        assertTrue(names.contains("p.AfterWide"), names::toString);
+    }
+
+    @Test
+    void testModifiedUtf8() {
+        var name = "p/Ünïcødé€😀";
+        var names = ClassFileReferences.classNames(ByteBuffer.wrap(classFile(name, "[L" + name + "$Inner;")));
+        assertTrue(names.contains(name.replace('/', '.')), names::toString);
+        assertTrue(names.contains(name.replace('/', '.') + "$Inner"), names::toString);
+    }
+
+    @Test
+    void testPositionAndByteOrder() {
+        var bytes = classFile("p/Plain");
+        var expected = ClassFileReferences.classNames(ByteBuffer.wrap(bytes));
+        var buffer = ByteBuffer.allocate(bytes.length + 16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(16).put(bytes).position(16);
+        assertEquals(expected, ClassFileReferences.classNames(buffer));
+        assertEquals(16, buffer.position(), "Leaves the position as it is");
+    }
+
+    @Test
+    void testInvalidClassFiles() {
+        var bytes = classFile("p/Plain", "[Lp/Element;");
+        var badMagic = bytes.clone();
+        badMagic[0] = 0;
+        assertEquals(List.of(), ClassFileReferences.classNames(ByteBuffer.wrap(badMagic)));
+
+        var badTag = classFile();
+        // The first entry of the pool, right after the magic, versions and count
+        badTag[10] = 99;
+        assertEquals(List.of(), ClassFileReferences.classNames(ByteBuffer.wrap(badTag)));
+
+        for (int length = 0; length < bytes.length; length++) {
+            var truncated = ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+            var names = assertDoesNotThrow(() -> ClassFileReferences.classNames(truncated));
+            if (length < 10) assertEquals(List.of(), names, "Truncated to " + length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package cpw.mods.cl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDirectBufferPool {
+    @Test
+    void testAcquire() {
+        var pool = new DirectBufferPool();
+        for (int capacity : new int[] {0, 1, 64 << 10, (64 << 10) + 1, 1 << 20}) {
+            var buffer = pool.acquire(capacity);
+            assertTrue(buffer.isDirect(), "Direct for " + capacity + " bytes");
+            assertTrue(buffer.capacity() >= capacity, "Fits " + capacity + " bytes");
+            assertEquals(0, buffer.position());
+            assertEquals(buffer.capacity(), buffer.limit());
+        }
+        var large = pool.acquire((1 << 20) + 1);
+        assertFalse(large.isDirect(), "Large classes get a heap buffer");
+    }
+
+    @Test
+    void testReuse() {
+        var pool = new DirectBufferPool();
+        var buffer = pool.acquire(100);
+        buffer.put(new byte[10]).flip();
+        pool.release(buffer);
+        var reused = pool.acquire(200);
+        assertSame(buffer, reused, "Released buffers are handed out again");
+        assertEquals(0, reused.position(), "Cleared");
+        assertEquals(reused.capacity(), reused.limit(), "Cleared");
+
+        var heap = pool.acquire((1 << 20) + 1);
+        pool.release(heap);
+        assertNotSame(heap, pool.acquire(100), "Heap buffers are not pooled");
+    }
+}
@@ -0,0 +1,47 @@
+package cpw.mods.cl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMissCache {
+    @Test
+    void testRepeatedMissIsCached() {
+        var cache = new MissCache(16);
+        assertFalse(cache.contains("a/Missing.class"));
+        cache.add("a/Missing.class");
+        assertTrue(cache.contains("a/Missing.class"), "A miss is remembered");
+        cache.add("a/Missing.class");
+        assertTrue(cache.contains("a/Missing.class"), "Adding it again keeps it");
+        assertFalse(cache.contains("a/Other.class"));
+    }
+
+    @Test
+    void testBounded() {
+        var cache = new MissCache(4);
+        for (int i = 0; i < 100; i++) {
+            cache.add("Missing" + i);
+        }
+        assertTrue(cache.contains("Missing99"), "The newest miss is kept");
+        int kept = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.contains("Missing" + i)) kept++;
+        }
+        assertEquals(4, kept, "Older misses are dropped");
+    }
+
+    @Test
+    void testSizeZeroDisables() {
+        var cache = new MissCache(0);
+        cache.add("a/Missing.class");
+        assertFalse(cache.contains("a/Missing.class"), "Nothing is cached");
+    }
+
+    @Test
+    void testClear() {
+        var cache = new MissCache(16);
+        cache.add("a/Missing.class");
+        cache.clear();
+        assertFalse(cache.contains("a/Missing.class"), "Cleared misses are looked up again");
+    }
+}
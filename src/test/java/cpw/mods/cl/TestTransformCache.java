@@ -0,0 +1,188 @@
+package cpw.mods.cl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTransformCache {
+    private static final byte[] INPUT = "input".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OUTPUT = "transformed".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setProperty() {
+        System.setProperty("securejarhandler.transformCache", dir.toString());
+    }
+
+    @AfterEach
+    void clearProperty() {
+        System.clearProperty("securejarhandler.transformCache");
+        System.clearProperty("securejarhandler.transformCache.maxSize");
+    }
+
+    private static TransformCache open(String version) {
+        var cache = TransformCache.open("layer", version);
+        assertNotNull(cache);
+        return cache;
+    }
+
+    private Path file() {
+        return dir.resolve("layer.transformed.bin");
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        var cache = open("1");
+        var key = cache.key("p.A", INPUT);
+        assertNull(cache.get(key, INPUT), "Nothing cached yet");
+        cache.put(key, INPUT, OUTPUT);
+        assertNull(cache.get(key, INPUT), "Appended for the next launch");
+        cache.close();
+
+        cache = open("1");
+        assertArrayEquals(OUTPUT, cache.get(cache.key("p.A", INPUT), INPUT));
+        assertNull(cache.get(cache.key("p.B", INPUT), INPUT), "Other class");
+        assertNull(cache.get(cache.key("p.A", OUTPUT), OUTPUT), "Other input");
+        cache.close();
+    }
+
+    @Test
+    void testUnchanged() throws IOException {
+        var cache = open("1");
+        cache.put(cache.key("p.A", INPUT), INPUT, INPUT.clone());
+        cache.close();
+
+        cache = open("1");
+        assertSame(INPUT, cache.get(cache.key("p.A", INPUT), INPUT), "Unchanged bytes are the input itself");
+        cache.close();
+    }
+
+    @Test
+    void testAppendedOnce() throws IOException {
+        var cache = open("1");
+        var key = cache.key("p.A", INPUT);
+        cache.put(key, INPUT, OUTPUT);
+        long size = Files.size(file());
+        cache.put(key, INPUT, OUTPUT);
+        assertEquals(size, Files.size(file()), "Not appended twice");
+        cache.close();
+    }
+
+    @Test
+    void testTruncatedRecordIsOverwritten() throws IOException {
+        var cache = open("1");
+        cache.put(cache.key("p.A", INPUT), INPUT, OUTPUT);
+        cache.put(cache.key("p.B", INPUT), INPUT, OUTPUT);
+        cache.close();
+        try (var channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        cache = open("1");
+        assertArrayEquals(OUTPUT, cache.get(cache.key("p.A", INPUT), INPUT), "Records before the cut are kept");
+        assertNull(cache.get(cache.key("p.B", INPUT), INPUT), "The cut record is ignored");
+        cache.put(cache.key("p.B", INPUT), INPUT, OUTPUT);
+        cache.close();
+
+        cache = open("1");
+        assertArrayEquals(OUTPUT, cache.get(cache.key("p.A", INPUT), INPUT));
+        assertArrayEquals(OUTPUT, cache.get(cache.key("p.B", INPUT), INPUT), "Appended over the cut record");
+        cache.close();
+    }
+
+    @Test
+    void testCorruptRecordIsIgnored() throws IOException {
+        var cache = open("1");
+        cache.put(cache.key("p.A", INPUT), INPUT, OUTPUT);
+        cache.put(cache.key("p.B", INPUT), INPUT, OUTPUT);
+        cache.close();
+        try (var channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            // Last byte of the payload of the last record
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), channel.size() - 1);
+        }
+
+        cache = open("1");
+        assertArrayEquals(OUTPUT, cache.get(cache.key("p.A", INPUT), INPUT));
+        assertNull(cache.get(cache.key("p.B", INPUT), INPUT), "Failed its checksum");
+        cache.close();
+    }
+
+    @Test
+    void testVersionChange() throws IOException {
+        var cache = open("1");
+        cache.put(cache.key("p.A", INPUT), INPUT, OUTPUT);
+        cache.close();
+
+        cache = open("2");
+        assertNull(cache.get(cache.key("p.A", INPUT), INPUT), "Transformed by another version");
+        cache.close();
+    }
+
+    @Test
+    void testFullFileIsStartedOver() throws IOException {
+        System.setProperty("securejarhandler.transformCache.maxSize", "1024");
+        var cache = open("1");
+        long size;
+        int i = 0;
+        do {
+            size = Files.size(file());
+            cache.put(cache.key("p.C" + i++, INPUT), INPUT, OUTPUT);
+        } while (Files.size(file()) > size);
+        cache.close();
+
+        // The new version finds the file full of records of the old one
+        cache = open("2");
+        assertNull(cache.get(cache.key("p.C0", INPUT), INPUT), "Transformed by another version");
+        cache.put(cache.key("p.A", INPUT), INPUT, OUTPUT);
+        cache.close();
+
+        cache = open("2");
+        assertArrayEquals(OUTPUT, cache.get(cache.key("p.A", INPUT), INPUT), "Stored after the file was full");
+        cache.close();
+    }
+
+    @Test
+    void testFormatChange() throws IOException {
+        var cache = open("1");
+        cache.put(cache.key("p.A", INPUT), INPUT, OUTPUT);
+        cache.close();
+        try (var channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            // Format number, right after the magic
+            channel.write(ByteBuffer.allocate(4).putInt(0, 99), 4);
+        }
+
+        cache = open("1");
+        assertNull(cache.get(cache.key("p.A", INPUT), INPUT), "Records of another format are dropped");
+        cache.close();
+        assertEquals(8, Files.size(file()), "The file was started over");
+    }
+
+    @Test
+    void testLockedFile() throws IOException {
+        var cache = open("1");
+        assertNull(TransformCache.open("layer", "1"), "Used by another instance");
+        cache.close();
+        open("1").close();
+    }
+
+    @Test
+    void testDisabled() {
+        assertNull(TransformCache.open(null, "1"), "Unnamed loaders are not cached");
+        assertNull(TransformCache.open("layer", null), "No transformer version");
+        System.clearProperty("securejarhandler.transformCache");
+        assertNull(TransformCache.open("layer", "1"), "Not enabled");
+    }
+}
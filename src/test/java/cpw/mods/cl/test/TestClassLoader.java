@@ -5,17 +5,42 @@ import cpw.mods.cl.ModuleClassLoader;
 import cpw.mods.jarhandling.SecureJar;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
 
+import java.lang.module.Configuration;
 import java.lang.module.ModuleFinder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestClassLoader {
     public static void main(String[] args) {
@@ -57,4 +82,284 @@ public class TestClassLoader {
             });
         });
     }
+
+    @Test
+    public void testProtectionDomainPerModule() throws Exception {
+        TestjarUtil.withTestjar1Setup(cl -> {
+            var someClass = Class.forName("cpw.mods.cl.testjar1.SomeClass", true, cl);
+            var serviceTest = Class.forName("cpw.mods.cl.testjar1.ServiceLoaderTest", true, cl);
+            assertSame(someClass.getProtectionDomain(), serviceTest.getProtectionDomain(), "Classes of one module share their protection domain");
+            assertSame(cl, someClass.getProtectionDomain().getClassLoader());
+            assertNotNull(someClass.getProtectionDomain().getCodeSource().getLocation());
+        });
+    }
+
+    @Test
+    public void testResourcesOutsidePackages() throws Exception {
+        TestjarUtil.withTestjar1Setup(cl -> {
+            assertNotNull(cl.getResource("META-INF/services/java.net.spi.URLStreamHandlerProvider"));
+            assertEquals(1, Collections.list(cl.getResources("META-INF/services/java.net.spi.URLStreamHandlerProvider")).size());
+            assertNull(cl.getResource("META-INF/services/does.not.Exist"));
+            assertNull(cl.getResource("assets/missing/pack.mcmeta"));
+        });
+    }
+
+    @Test
+    public void testRootResource() throws Exception {
+        TestjarUtil.withTestjar1Setup(cl -> {
+            // The empty name is the root of every module, like names that start with a slash
+            var root = cl.getResource("");
+            assertNotNull(root);
+            assertEquals("union", root.getProtocol(), "Found in the module rather than the parent loaders");
+            assertEquals(List.of(root), Collections.list(cl.getResources("")));
+        });
+    }
+
+    @Test
+    public void testResourceAsStream() throws Exception {
+        TestjarUtil.withTestjar1Setup(cl -> {
+            for (var name : List.of("META-INF/services/java.net.spi.URLStreamHandlerProvider", "cpw/mods/cl/testjar1/SomeClass.class")) {
+                try (var is = cl.getResourceAsStream(name); var fromUrl = cl.getResource(name).openStream()) {
+                    assertNotNull(is, name);
+                    assertArrayEquals(fromUrl.readAllBytes(), is.readAllBytes(), name);
+                }
+            }
+            assertNull(cl.getResourceAsStream("cpw/mods/cl/testjar1/Missing.class"));
+        });
+    }
+
+    @Test
+    public void testDirectoryMissesAreNotCached(@TempDir Path dir) throws Exception {
+        Files.createDirectories(dir.resolve("META-INF"));
+        Files.writeString(dir.resolve("META-INF/MANIFEST.MF"), "Manifest-Version: 1.0\nAutomatic-Module-Name: missing.dir\n");
+        Files.createDirectories(dir.resolve("missing/dir"));
+        Files.writeString(dir.resolve("missing/dir/Present.txt"), "present");
+
+        var cl = newLoader(SecureJar.from(dir), null);
+        assertNull(cl.getResourceAsStream("missing/dir/Later.txt"));
+        // Created after it was missed, as when a development environment recompiles
+        Files.writeString(dir.resolve("missing/dir/Later.txt"), "later");
+        try (var is = cl.getResourceAsStream("missing/dir/Later.txt")) {
+            assertNotNull(is, "A directory can gain resources");
+        }
+    }
+
+    @Test
+    public void testDelegatedMissIsCached(@TempDir Path dir) throws Exception {
+        var jar = dir.resolve("missing.jar");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+            zos.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zos.write("Manifest-Version: 1.0\nAutomatic-Module-Name: missing.jar\n".getBytes(StandardCharsets.UTF_8));
+            zos.putNextEntry(new ZipEntry("missing/jar/Present.txt"));
+            zos.write("present".getBytes(StandardCharsets.UTF_8));
+        }
+
+        var fallback = new CountingClassLoader();
+        var cl = newLoader(SecureJar.from(jar), fallback);
+        assertThrows(ClassNotFoundException.class, () -> cl.loadClass("elsewhere.Missing"));
+        assertThrows(ClassNotFoundException.class, () -> cl.loadClass("elsewhere.Missing"));
+        assertEquals(1, fallback.attempts.get(), "The fallback loader was only asked once");
+
+        // The new fallback loader may have it
+        var other = new CountingClassLoader();
+        cl.setFallbackClassLoader(other);
+        assertThrows(ClassNotFoundException.class, () -> cl.loadClass("elsewhere.Missing"));
+        assertEquals(1, other.attempts.get(), "The new fallback loader was asked");
+    }
+
+    private static ModuleClassLoader newLoader(SecureJar jar, ClassLoader fallback) {
+        var conf = Configuration.resolveAndBind(JarModuleFinder.of(jar), List.of(ModuleLayer.boot().configuration()), ModuleFinder.of(), List.of(jar.name()));
+        return new ModuleClassLoader("misses", conf, List.of(ModuleLayer.boot()), fallback);
+    }
+
+    private static final class CountingClassLoader extends ClassLoader {
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private CountingClassLoader() {
+            super(null);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            attempts.incrementAndGet();
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        TestjarUtil.withTestjar1Setup(cl -> {
+            var timings = ((ModuleClassLoader) cl).preload(List.of("cpw.mods.cl.testjar1.SomeClass", "cpw.mods.cl.testjar1.Missing"), ForkJoinPool.commonPool());
+            assertEquals(2, timings.size());
+            assertSame(Class.forName("cpw.mods.cl.testjar1.SomeClass", false, cl), timings.get(0).loadedClass());
+            assertTrue(timings.get(0).prepareNanos() > 0, "Prepared on the executor");
+            assertNull(timings.get(1).loadedClass());
+        });
+    }
+
+    @Test
+    public void testClassLoadProfile(@TempDir Path profiles) throws Exception {
+        System.setProperty("securejarhandler.classLoadProfile", profiles.toString());
+        try {
+            TestjarUtil.withTestjar1Setup(cl -> {
+                Class.forName("cpw.mods.cl.testjar1.SomeClass", false, cl);
+                ((ModuleClassLoader) cl).saveClassLoadProfile();
+            });
+            var profile = Files.readAllLines(profiles.resolve("testjar2-layer.classes.txt"));
+            assertTrue(profile.stream().anyMatch(l -> l.endsWith("\tcpw.mods.cl.testjar1.SomeClass")), "Recorded the class");
+
+            // The next layer prefetches it, and still defines it
+            TestjarUtil.withTestjar1Setup(cl -> {
+                assertNotNull(Class.forName("cpw.mods.cl.testjar1.SomeClass", false, cl));
+                ((ModuleClassLoader) cl).saveClassLoadProfile();
+            });
+        } finally {
+            System.clearProperty("securejarhandler.classLoadProfile");
+        }
+    }
+
+    @Test
+    public void testSpeculativePrefetch() throws Exception {
+        System.setProperty("securejarhandler.speculativePrefetch", "true");
+        try {
+            TestjarUtil.withTestjar1Setup(cl -> {
+                var loader = (ModuleClassLoader) cl;
+                Class.forName("cpw.mods.cl.testjar1.ReferencesSomeClass", false, cl);
+                // Read in the background, only the classes of the loader's own modules
+                for (int i = 0; i < 500 && loader.prefetchStats().prefetchedClasses() == 0; i++) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, loader.prefetchStats().prefetchedClasses(), "Prefetched the referenced class");
+
+                assertNotNull(Class.forName("cpw.mods.cl.testjar1.SomeClass", false, cl));
+                var stats = loader.prefetchStats();
+                assertEquals(1, stats.hits(), "Defined it from the prefetched bytes");
+                assertEquals(stats.prefetchedBytes(), stats.hitBytes());
+                assertEquals(0, stats.wastedBytes());
+            });
+        } finally {
+            System.clearProperty("securejarhandler.speculativePrefetch");
+        }
+    }
+
+    @Test
+    public void testPrefetchBudgetPerLoader() throws Exception {
+        System.setProperty("securejarhandler.speculativePrefetch", "true");
+        System.setProperty("securejarhandler.classLoadProfile.budget", "1");
+        try {
+            // Read by this loader, after other loaders used the default budget
+            TestjarUtil.withTestjar1Setup(cl -> {
+                var loader = (ModuleClassLoader) cl;
+                Class.forName("cpw.mods.cl.testjar1.ReferencesSomeClass", false, cl);
+                for (int i = 0; i < 500 && loader.prefetchStats().prefetchedClasses() == 0; i++) {
+                    Thread.sleep(10);
+                }
+                var stats = loader.prefetchStats();
+                assertEquals(1, stats.prefetchedClasses(), "Prefetched the referenced class");
+                assertEquals(stats.prefetchedBytes(), stats.wastedBytes(), "Dropped, as it does not fit the budget");
+            });
+        } finally {
+            System.clearProperty("securejarhandler.speculativePrefetch");
+            System.clearProperty("securejarhandler.classLoadProfile.budget");
+        }
+    }
+
+    /**
+     * Adds a field to every class, and fails for the classes it is given.
+     * Workers stop before transforming those classes until {@link #blockWorkers} is released.
+     */
+    private static final class TransformingClassLoader extends ModuleClassLoader {
+        private final Set<String> failing;
+        private final Map<String, byte[]> transformed = new ConcurrentHashMap<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final CountDownLatch blockWorkers = new CountDownLatch(1);
+        private final Thread testThread = Thread.currentThread();
+
+        TransformingClassLoader(String name, Configuration configuration, List<ModuleLayer> parentLayers, Set<String> failing) {
+            super(name, configuration, parentLayers);
+            this.failing = failing;
+        }
+
+        @Override
+        protected byte[] maybeTransformClassBytes(byte[] bytes, String name, String context) {
+            attempts.incrementAndGet();
+            if (failing.contains(name)) {
+                if (Thread.currentThread() != testThread) {
+                    try {
+                        blockWorkers.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                throw new IllegalStateException("Cannot transform " + name);
+            }
+            var node = new ClassNode();
+            new ClassReader(bytes).accept(node, 0);
+            node.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "transformed", "Z", null, null));
+            var writer = new ClassWriter(0);
+            node.accept(writer);
+            var result = writer.toByteArray();
+            transformed.put(name, result);
+            return result;
+        }
+    }
+
+    private static TransformingClassLoader loadTransformed(boolean pipelined, Set<String> failing, TestjarUtil.TestCallback callback) throws Exception {
+        var loader = new AtomicReference<TransformingClassLoader>();
+        if (pipelined) System.setProperty("securejarhandler.pipelinedTransform", "true");
+        try {
+            TestjarUtil.withTestjar1Setup((name, configuration, parentLayers) -> {
+                loader.set(new TransformingClassLoader(name, configuration, parentLayers, failing));
+                return loader.get();
+            }, cl -> {
+                Class.forName("cpw.mods.cl.testjar1.ReferencesSomeClass", false, cl);
+                // Let the worker store the referenced class first, as the loader does not wait for it,
+                // or start transforming a class that it fails on
+                for (int i = 0; i < 500 && pipelined && !workerDone(loader.get(), failing); i++) {
+                    Thread.sleep(10);
+                }
+                callback.test(cl);
+            });
+        } finally {
+            System.clearProperty("securejarhandler.pipelinedTransform");
+        }
+        return loader.get();
+    }
+
+    private static boolean workerDone(TransformingClassLoader loader, Set<String> failing) {
+        return failing.isEmpty() ? loader.prefetchStats().prefetchedClasses() > 0 : loader.attempts.get() > 1;
+    }
+
+    @Test
+    public void testPipelinedTransform() throws Exception {
+        var someClass = "cpw.mods.cl.testjar1.SomeClass";
+        var pipelined = loadTransformed(true, Set.of(), cl -> {
+            assertNotNull(Class.forName(someClass, false, cl).getField("transformed"), "Defined from the transformed bytes");
+            assertEquals(1, ((ModuleClassLoader) cl).prefetchStats().hits(), "Transformed by a worker");
+        });
+        var inline = loadTransformed(false, Set.of(), cl -> {
+            assertNotNull(Class.forName(someClass, false, cl).getField("transformed"), "Defined from the transformed bytes");
+            assertEquals(0, ((ModuleClassLoader) cl).prefetchStats().hits(), "Transformed inline");
+        });
+        assertArrayEquals(inline.transformed.get(someClass), pipelined.transformed.get(someClass), "Same bytes either way");
+        assertEquals(inline.attempts.get(), pipelined.attempts.get(), "Transformed once either way");
+    }
+
+    @Test
+    public void testPipelinedTransformFailure() throws Exception {
+        var someClass = "cpw.mods.cl.testjar1.SomeClass";
+        var pipelined = loadTransformed(true, Set.of(someClass), cl -> {
+            // The worker is stuck, as if its transformer waited for a class whose lock this thread holds
+            long start = System.nanoTime();
+            var e = assertThrows(IllegalStateException.class, () -> Class.forName(someClass, false, cl));
+            assertEquals("Cannot transform " + someClass, e.getMessage());
+            assertTrue(System.nanoTime() - start < 500_000_000L, "Did not wait for the blocked worker");
+            ((TransformingClassLoader) cl).blockWorkers.countDown();
+        });
+        assertEquals(3, pipelined.attempts.get(), "The worker failed, then the loader transformed the class again");
+        loadTransformed(false, Set.of(someClass), cl -> {
+            var e = assertThrows(IllegalStateException.class, () -> Class.forName(someClass, false, cl));
+            assertEquals("Cannot transform " + someClass, e.getMessage());
+        });
+    }
 }
@@ -20,6 +20,10 @@ public class TestjarUtil {
      * Build a layer for a {@code testjarX} source set.
      */
     private static BuiltLayer buildTestjarLayer(int testjar, List<ModuleLayer> parentLayers) {
+        return buildTestjarLayer(testjar, parentLayers, ModuleClassLoader::new);
+    }
+
+    private static BuiltLayer buildTestjarLayer(int testjar, List<ModuleLayer> parentLayers, LoaderFactory factory) {
         var paths = Stream.of(System.getenv("sjh.testjar" + testjar).split(File.pathSeparator))
                 .map(Paths::get)
                 .toArray(Path[]::new);
@@ -32,7 +36,7 @@ public class TestjarUtil {
                 parentLayers.stream().map(ModuleLayer::configuration).toList(),
                 ModuleFinder.of(),
                 roots);
-        var cl = new ModuleClassLoader("testjar2-layer", conf, parentLayers);
+        var cl = factory.create("testjar2-layer", conf, parentLayers);
         var layer = ModuleLayer.defineModules(conf, parentLayers, m -> cl).layer();
         return new BuiltLayer(cl, layer);
     }
@@ -59,6 +63,15 @@ public class TestjarUtil {
         withClassLoader(built.cl, callback);
     }
 
+    /**
+     * Same as {@link #withTestjar1Setup(TestCallback)}, with a class loader from the factory.
+     */
+    public static void withTestjar1Setup(LoaderFactory factory, TestCallback callback) throws Exception {
+        var built = buildTestjarLayer(1, List.of(ModuleLayer.boot()), factory);
+
+        withClassLoader(built.cl, callback);
+    }
+
     /**
      * Load the {@code testjar2} source set as new module into a new layer,
      * whose parent is a layer loaded from the {@code testjar1} source set.
@@ -75,6 +88,11 @@ public class TestjarUtil {
         void test(ClassLoader cl) throws Exception;
     }
 
+    @FunctionalInterface
+    public interface LoaderFactory {
+        ModuleClassLoader create(String name, Configuration configuration, List<ModuleLayer> parentLayers);
+    }
+
     /**
      * Instantiates a {@link ServiceLoader} within the testjar1 module.
      */
@@ -0,0 +1,57 @@
+package cpw.mods.jarhandling.impl;
+
+import cpw.mods.jarhandling.JarContents;
+import cpw.mods.jarhandling.JarContentsBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+public class TestBuildAll {
+    private static final Path DIR1 = Paths.get("src", "test", "resources", "dir1").toAbsolutePath().normalize();
+    private static final Path DIR2 = Paths.get("src", "test", "resources", "dir2").toAbsolutePath().normalize();
+    private static final Path SIGNED = Paths.get("src", "test", "resources", "signed.zip").toAbsolutePath().normalize();
+    private static final Path UNSIGNED = Paths.get("src", "test", "resources", "unsigned.zip").toAbsolutePath().normalize();
+
+    @Test
+    void testOrderIsPreserved() throws Exception {
+        var paths = List.of(SIGNED, DIR1, UNSIGNED, DIR2);
+        var builders = paths.stream().map(p -> new JarContentsBuilder().paths(p)).toList();
+
+        var built = JarContentsBuilder.buildAll(builders);
+        try {
+            Assertions.assertEquals(paths, built.stream().map(JarContents::getPrimaryPath).toList());
+        } finally {
+            for (var contents : built) {
+                contents.close();
+            }
+        }
+    }
+
+    @Test
+    void testCustomExecutor() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var built = JarContentsBuilder.buildAll(List.of(new JarContentsBuilder().paths(DIR1), new JarContentsBuilder().paths(DIR2)), executor);
+            Assertions.assertEquals(List.of(DIR1, DIR2), built.stream().map(JarContents::getPrimaryPath).toList());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testFailuresAreAggregated() {
+        var builders = List.of(
+                new JarContentsBuilder().paths(DIR1),
+                new JarContentsBuilder().paths(Paths.get("thisdoesnotexist")),
+                new JarContentsBuilder().paths(UNSIGNED),
+                new JarContentsBuilder().paths(Paths.get("thisdoesnotexisteither")));
+
+        var e = Assertions.assertThrows(UncheckedIOException.class, () -> JarContentsBuilder.buildAll(builders));
+        Assertions.assertEquals(2, e.getCause().getSuppressed().length, "Both failures are reported");
+    }
+}
@@ -0,0 +1,69 @@
+package cpw.mods.jarhandling.impl;
+
+import cpw.mods.jarhandling.SecureJar;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.security.CodeSigner;
+import java.util.Base64;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestManifestDigests {
+    @Test
+    void testStripAndLookup() {
+        var manifest = new Manifest();
+        var digested = new Attributes();
+        digested.putValue("SHA-256-Digest", Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3 }));
+        digested.putValue("SHA1-Digest", Base64.getEncoder().encodeToString(new byte[] { 4, 5 }));
+        manifest.getEntries().put("a/A.class", digested);
+        // Stripping removes the digests from the section itself
+        var expectedDigests = new Attributes(digested);
+        var mixed = new Attributes();
+        mixed.putValue("SHA-256-Digest", Base64.getEncoder().encodeToString(new byte[] { 6 }));
+        mixed.putValue("Implementation-Title", "b");
+        manifest.getEntries().put("b/", mixed);
+
+        // Equal, but not identical arrays
+        var signers = Map.of("a/A.class", new CodeSigner[0], "b/", new CodeSigner[0]);
+        var digests = ManifestDigests.strip(manifest);
+        digests.setSigners(signers);
+
+        assertNull(manifest.getAttributes("a/A.class"), "Section with only digests is removed");
+        assertEquals(1, manifest.getAttributes("b/").size(), "Other attributes are kept");
+        assertEquals("b", manifest.getAttributes("b/").getValue("Implementation-Title"));
+
+        int a = digests.indexOf("a/A.class");
+        assertTrue(a >= 0);
+        assertEquals(2, digests.endDigest(a) - digests.firstDigest(a));
+        for (int d = digests.firstDigest(a); d < digests.endDigest(a); d++) {
+            var expected = digests.algorithm(d).equals("sha-256") ? new byte[] { 1, 2, 3 } : new byte[] { 4, 5 };
+            assertTrue(digests.matches(d, expected), "Digest " + digests.algorithm(d) + " is decoded");
+        }
+        assertSame(digests.signers(a), digests.signers(digests.indexOf("b/")), "Signer arrays are shared");
+        assertEquals(1, digests.signerSets().size());
+        assertTrue(digests.indexOf("c/C.class") < 0);
+
+        var restored = new Attributes();
+        digests.addDigestAttributes(a, restored);
+        assertEquals(expectedDigests, restored, "Digest attributes can be restored");
+    }
+
+    @Test // getManifest leaves out the digests, which getTrustedManifestEntries still has
+    void testPublicManifestHasNoDigests() throws Exception {
+        var jar = SecureJar.from(Paths.get("src", "test", "resources", "signed.zip"));
+        var manifest = jar.moduleDataProvider().getManifest();
+        assertEquals("1.0", manifest.getMainAttributes().getValue(Attributes.Name.MANIFEST_VERSION));
+        assertNull(manifest.getAttributes("test/Signed.class"), "Digest-only sections are not in the manifest");
+        assertSame(manifest, jar.moduleDataProvider().getManifest());
+
+        // Only trusted once the entry is verified
+        assertEquals(SecureJar.Status.VERIFIED, jar.verifyPath(jar.getPath("test/Signed.class")));
+        var trusted = jar.getTrustedManifestEntries("test/Signed.class");
+        assertNotNull(trusted);
+        assertEquals("legZbPE2zPbGP9gPiNs0tX1xiHojFgSbOiorS9uuQzw=", trusted.getValue("SHA-256-Digest"));
+    }
+}
@@ -3,6 +3,7 @@ package cpw.mods.jarhandling.impl;
 import cpw.mods.jarhandling.JarContents;
 import cpw.mods.jarhandling.JarMetadata;
 import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.niofs.union.ContentFingerprint;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -12,6 +13,7 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.jar.Manifest;
 
 public class TestMetadata
@@ -71,6 +73,15 @@ public class TestMetadata
             return List.of();
         }
 
+        @Override
+        public ContentFingerprint fingerprint() {
+            return new ContentFingerprint(0, 0);
+        }
+
+        @Override
+        public void readAllEntries(Executor executor, EntryVisitor visitor) {
+        }
+
         @Override
         public void close() {
         }
@@ -0,0 +1,59 @@
+package cpw.mods.jarhandling.impl;
+
+import cpw.mods.jarhandling.JarContentsBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipFile;
+
+public class TestReadAllEntries {
+    @Test
+    void testCentralDirectoryOrder() throws Exception {
+        var path = Paths.get("sjh-jmh", "src", "testjars", "testjar2.jar");
+        List<String> expected = new ArrayList<>();
+        try (var zf = new ZipFile(path.toFile())) {
+            zf.stream().filter(e -> !e.isDirectory()).forEach(e -> expected.add(e.getName()));
+        }
+
+        var executor = Executors.newFixedThreadPool(4);
+        try (var contents = new JarContentsBuilder().paths(path).build()) {
+            List<String> visited = new ArrayList<>();
+            contents.readAllEntries(executor, (name, buffer) -> {
+                visited.add(name);
+                if (name.endsWith(".class")) {
+                    Assertions.assertEquals(0xCAFEBABE, buffer.getInt(buffer.position()), "Class file " + name + " is fully read");
+                }
+            });
+            Assertions.assertEquals(expected, visited);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testShadowedAndFilteredEntries() throws Exception {
+        var dir1 = Paths.get("src", "test", "resources", "dir1");
+        var dir2 = Paths.get("src", "test", "resources", "dir2");
+        var executor = Executors.newSingleThreadExecutor();
+        try (var contents = new JarContentsBuilder().paths(dir1, dir2).pathFilter((entry, base) -> !entry.startsWith("subdir1/")).build()) {
+            Map<String, String> visited = new LinkedHashMap<>();
+            contents.readAllEntries(executor, (name, buffer) -> visited.put(name, StandardCharsets.UTF_8.decode(buffer).toString()));
+
+            Assertions.assertEquals(Map.of(
+                    "masktest.txt", Files.readString(dir2.resolve("masktest.txt")),
+                    "masktest2.txt", Files.readString(dir1.resolve("masktest2.txt")),
+                    "masktest3.txt", Files.readString(dir2.resolve("masktest3.txt"))
+            ), visited);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
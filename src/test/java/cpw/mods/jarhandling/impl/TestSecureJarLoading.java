@@ -3,11 +3,21 @@ package cpw.mods.jarhandling.impl;
 import cpw.mods.jarhandling.SecureJar;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
@@ -43,6 +53,49 @@ public class TestSecureJarLoading {
         }
     }
 
+    @Test // Many threads verify the same entries of one jar at once
+    void testConcurrentVerification() throws Exception {
+        final var path = Paths.get("src", "test", "resources", "signed.zip");
+        SecureJar jar = SecureJar.from(path);
+        var entries = new HashMap<String, byte[]>();
+        try (var is = Files.newInputStream(path)) {
+            ZipInputStream zis = new ZipInputStream(is);
+            for (var ze = zis.getNextEntry(); ze!=null; ze=zis.getNextEntry()) {
+                if (SecureJarVerifier.isSigningRelated(ze.getName())) continue;
+                if (ze.isDirectory()) continue;
+                entries.put(ze.getName(), zis.readAllBytes());
+            }
+        }
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> entries.forEach((name, bytes) -> {
+                    var cs = jar.moduleDataProvider().verifyAndGetSigners(name, bytes);
+                    assertNotNull(cs, "Has code signers array");
+                    assertTrue(cs.length > 0, "With length > 0");
+                })));
+            }
+            for (var future : futures) future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        entries.keySet().forEach(name -> assertEquals(SecureJar.Status.VERIFIED, jar.getFileStatus(name)));
+    }
+
+    @Test // Jars signed by the same certificate share their signers
+    void testSignersAreShared() throws Exception {
+        final var signed = SecureJar.from(Paths.get("src", "test", "resources", "signed.zip"));
+        final var signedAgain = SecureJar.from(Paths.get("src", "test", "resources", "signed.zip"));
+        final var partial = SecureJar.from(Paths.get("src", "test", "resources", "partial.zip"));
+        final var bytes = Files.readAllBytes(signed.getPath("test/Signed.class"));
+        final var cs = signed.moduleDataProvider().verifyAndGetSigners("test/Signed.class", bytes);
+        assertNotNull(cs);
+        assertSame(cs, signedAgain.moduleDataProvider().verifyAndGetSigners("test/Signed.class", bytes), "Same jar opened twice");
+        assertSame(cs, partial.moduleDataProvider().verifyAndGetSigners("test/Signed.class", Files.readAllBytes(partial.getPath("test/Signed.class"))), "Other jar with the same signer");
+        assertSame(signed.getManifestSigners(), partial.getManifestSigners());
+    }
+
     @Test // Nothing is signed
     void testInsecureJar() throws Exception {
         final var path = Paths.get("src", "test", "resources", "unsigned.zip");
@@ -87,6 +140,69 @@ public class TestSecureJarLoading {
         assertNull(cs);
     }
 
+    @Test // Reading and verifying in one pass matches verifying the bytes afterwards
+    void testReadVerified() throws Exception {
+        final var signed = SecureJar.from(Paths.get("src", "test", "resources", "signed.zip"));
+        final var read = signed.moduleDataProvider().readVerified("test/Signed.class").orElseThrow();
+        assertAll("Behaves as a properly secured JAR",
+                ()->assertNotNull(read.signers(), "Has code signers array"),
+                ()->assertEquals(SecureJar.Status.VERIFIED, signed.getFileStatus("test/Signed.class")),
+                ()->assertArrayEquals(Files.readAllBytes(signed.getPath("test/Signed.class")), read.bytes(), "Has the entry bytes")
+        );
+
+        final var tampered = SecureJar.from(Paths.get("src", "test", "resources", "tampered.zip"));
+        assertNull(tampered.moduleDataProvider().readVerified("test/Signed.class").orElseThrow().signers());
+        assertEquals(SecureJar.Status.INVALID, tampered.getFileStatus("test/Signed.class"));
+        assertTrue(signed.moduleDataProvider().readVerified("test/Missing.class").isEmpty());
+    }
+
+    @Test // Reading an entry directly gives the same bytes as the file system, and does not verify it
+    void testReadFile() throws Exception {
+        final var signed = SecureJar.from(Paths.get("src", "test", "resources", "signed.zip"));
+        final var bytes = signed.moduleDataProvider().readFile("test/Signed.class").orElseThrow();
+        assertArrayEquals(Files.readAllBytes(signed.getPath("test/Signed.class")), bytes, "Has the entry bytes");
+        assertEquals(SecureJar.Status.NONE, signed.getFileStatus("test/Signed.class"));
+        assertTrue(signed.moduleDataProvider().readFile("test/Missing.class").isEmpty());
+    }
+
+    @Test
+    void testReadVerifiedBuffer() throws Exception {
+        final var signed = SecureJar.from(Paths.get("src", "test", "resources", "signed.zip"));
+        final var read = signed.moduleDataProvider().readVerified("test/Signed.class", ByteBuffer::allocateDirect).orElseThrow();
+        final var bytes = new byte[read.buffer().remaining()];
+        read.buffer().get(bytes);
+        assertArrayEquals(Files.readAllBytes(signed.getPath("test/Signed.class")), bytes, "Has the entry bytes");
+        assertNotNull(read.signers(), "Verified while reading");
+        assertEquals(SecureJar.Status.VERIFIED, signed.getFileStatus("test/Signed.class"));
+
+        final var tampered = SecureJar.from(Paths.get("src", "test", "resources", "tampered.zip"));
+        assertNull(tampered.moduleDataProvider().readVerified("test/Signed.class", ByteBuffer::allocateDirect).orElseThrow().signers());
+        assertEquals(SecureJar.Status.INVALID, tampered.getFileStatus("test/Signed.class"));
+    }
+
+    @Test // Entries are read into an array or buffer of exactly their size, also when that is a multiple of the chunk size
+    void testReadAllExactSize(@TempDir Path dir) throws Exception {
+        for (int size : new int[] {0, 1, 8191, 8192, 3 * 8192, 3 * 8192 + 1}) {
+            var file = dir.resolve(size + ".bin");
+            var contents = new byte[size];
+            new Random(size).nextBytes(contents);
+            Files.write(file, contents);
+
+            try (var channel = Files.newByteChannel(file)) {
+                assertArrayEquals(contents, JarSigningData.readAll(channel, null), "Reads " + size + " bytes into an array");
+            }
+            var allocations = new AtomicInteger();
+            try (var channel = Files.newByteChannel(file)) {
+                var buffer = JarSigningData.readAll(channel, null, capacity -> {
+                    allocations.incrementAndGet();
+                    return ByteBuffer.allocate(capacity);
+                });
+                assertEquals(ByteBuffer.wrap(contents), buffer, "Reads " + size + " bytes into a buffer");
+                assertEquals(1, allocations.get(), "Never grows the buffer of " + size + " bytes");
+            }
+        }
+    }
+
     @Test // Contained a signed file, as well as a unsigned file.
     void testPartial() throws Exception {
         final var path = Paths.get("src", "test", "resources", "partial.zip");
@@ -105,6 +221,27 @@ public class TestSecureJarLoading {
         assertNull(ucs);
     }
 
+    @Test // Verifies every entry up front, and reports the ones that are not properly signed
+    void testVerifyAll() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var partial = SecureJar.from(Paths.get("src", "test", "resources", "partial.zip"));
+            final var report = partial.verifyAll(executor);
+            assertAll("Reports the unsigned entry",
+                    ()->assertEquals(1, report.verified()),
+                    ()->assertEquals(1, report.none()),
+                    ()->assertEquals(List.of("test/UnSigned.class"), report.unsignedEntries()),
+                    ()->assertFalse(report.allVerified()),
+                    ()->assertEquals(SecureJar.Status.VERIFIED, partial.getFileStatus("test/Signed.class"), "Status is known before loading")
+            );
+
+            final var tampered = SecureJar.from(Paths.get("src", "test", "resources", "tampered.zip")).verifyAll(executor);
+            assertEquals(List.of("test/Signed.class"), tampered.invalidEntries());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test // Has a jar with only a manifest
     void testEmptyJar() throws Exception {
         final var path = Paths.get("src", "test", "resources", "empty.zip");
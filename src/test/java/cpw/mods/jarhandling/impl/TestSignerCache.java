@@ -0,0 +1,70 @@
+package cpw.mods.jarhandling.impl;
+
+import cpw.mods.jarhandling.SecureJar;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSignerCache {
+    // Two jars with different contents, signed with the same key
+    private static final Path FIRST = Paths.get("src", "test", "resources", "samesigner1.zip").toAbsolutePath().normalize();
+    private static final Path SECOND = Paths.get("src", "test", "resources", "samesigner2.zip").toAbsolutePath().normalize();
+
+    @Test
+    void testSameSignerHitsCache() throws Exception {
+        var first = SecureJar.from(FIRST);
+        var firstSigners = first.moduleDataProvider().verifyAndGetSigners("test/One.txt", "one".getBytes(StandardCharsets.UTF_8));
+        first.close();
+        assertNotNull(firstSigners, "First jar is signed");
+
+        int hits = SignerCache.blockHits();
+        var second = SecureJar.from(SECOND);
+        try {
+            var signers = second.moduleDataProvider().verifyAndGetSigners("test/Two.txt", "two".getBytes(StandardCharsets.UTF_8));
+            assertEquals(hits + 1, SignerCache.blockHits(), "Signer of the second jar is cached");
+            assertSame(firstSigners, signers, "Same signers as the first jar");
+            assertEquals(SecureJar.Status.VERIFIED, second.getFileStatus("test/Two.txt"));
+        } finally {
+            second.close();
+        }
+    }
+
+    @Test
+    void testTamperedSignatureFileIsNotTrusted(@TempDir Path dir) throws Exception {
+        // Make sure the signer is cached
+        var first = SecureJar.from(FIRST);
+        assertNotNull(first.moduleDataProvider().verifyAndGetSigners("test/One.txt", "one".getBytes(StandardCharsets.UTF_8)));
+        first.close();
+
+        // Same signature block, but the .SF file no longer matches it
+        var tampered = dir.resolve("tampered.zip");
+        try (var zis = new ZipInputStream(Files.newInputStream(SECOND));
+             var zos = new ZipOutputStream(Files.newOutputStream(tampered))) {
+            for (var ze = zis.getNextEntry(); ze != null; ze = zis.getNextEntry()) {
+                var bytes = zis.readAllBytes();
+                if (ze.getName().equals("META-INF/TEST.SF")) {
+                    bytes = new String(bytes, StandardCharsets.UTF_8).replace("Two.txt", "Six.txt").getBytes(StandardCharsets.UTF_8);
+                }
+                zos.putNextEntry(new ZipEntry(ze.getName()));
+                zos.write(bytes);
+                zos.closeEntry();
+            }
+        }
+
+        var jar = SecureJar.from(tampered);
+        try {
+            assertThrows(SecurityException.class, () -> jar.moduleDataProvider().verifyAndGetSigners("test/Six.txt", "two".getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            jar.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package cpw.mods.jarhandling.impl;
+
+import cpw.mods.jarhandling.SecureJar;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestVerifiedDigestCache {
+    private static final Path SIGNED = Paths.get("src", "test", "resources", "signed.zip").toAbsolutePath().normalize();
+    private static final Path TAMPERED = Paths.get("src", "test", "resources", "tampered.zip").toAbsolutePath().normalize();
+
+    @AfterEach
+    void clearProperty() {
+        System.clearProperty("securejarhandler.verifiedDigestCache");
+    }
+
+    @Test
+    void testWarmStartSkipsVerification(@TempDir Path cacheDir) throws Exception {
+        System.setProperty("securejarhandler.verifiedDigestCache", cacheDir.toString());
+        var entries = readEntries(SIGNED);
+
+        var cold = SecureJar.from(SIGNED);
+        entries.forEach((name, bytes) -> assertNotNull(cold.moduleDataProvider().verifyAndGetSigners(name, bytes)));
+        cold.close();
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(1, files.count(), "One cache file per jar");
+        }
+
+        var warm = SecureJar.from(SIGNED);
+        try {
+            for (var entry : entries.entrySet()) {
+                assertEquals(SecureJar.Status.VERIFIED, warm.getFileStatus(entry.getKey()), "Known to be verified before hashing");
+                // The cached status wins, the bytes are not hashed again
+                var cs = warm.moduleDataProvider().verifyAndGetSigners(entry.getKey(), new byte[0]);
+                assertNotNull(cs, "Has code signers array");
+                assertTrue(cs.length > 0, "With length > 0");
+            }
+        } finally {
+            warm.close();
+        }
+    }
+
+    @Test
+    void testChangedJarIsNotTrusted(@TempDir Path cacheDir) throws Exception {
+        System.setProperty("securejarhandler.verifiedDigestCache", cacheDir.toString());
+        var entries = readEntries(SIGNED);
+
+        var cold = SecureJar.from(SIGNED);
+        entries.forEach((name, bytes) -> cold.moduleDataProvider().verifyAndGetSigners(name, bytes));
+        cold.close();
+
+        // Same signer, but test/Signed.class was modified
+        var tampered = SecureJar.from(TAMPERED);
+        try {
+            assertEquals(SecureJar.Status.NONE, tampered.getFileStatus("test/Signed.class"), "Not verified yet");
+            var tamperedEntries = readEntries(TAMPERED);
+            assertNull(tampered.moduleDataProvider().verifyAndGetSigners("test/Signed.class", tamperedEntries.get("test/Signed.class")));
+        } finally {
+            tampered.close();
+        }
+    }
+
+    private static Map<String, byte[]> readEntries(Path path) throws Exception {
+        var entries = new HashMap<String, byte[]>();
+        try (var zis = new ZipInputStream(Files.newInputStream(path))) {
+            for (var ze = zis.getNextEntry(); ze != null; ze = zis.getNextEntry()) {
+                if (SecureJarVerifier.isSigningRelated(ze.getName()) || ze.isDirectory()) continue;
+                entries.put(ze.getName(), zis.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
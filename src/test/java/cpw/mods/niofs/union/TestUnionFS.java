@@ -1,11 +1,13 @@
 package cpw.mods.niofs.union;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -23,6 +25,7 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -304,4 +307,54 @@ public class TestUnionFS {
             );
         }
     }
+
+    @Test
+    void testFingerprint() throws Exception {
+        final var jar1 = Paths.get("sjh-jmh", "src", "testjars", "testjar1.jar").toAbsolutePath().normalize();
+        final var jar2 = Paths.get("sjh-jmh", "src", "testjars", "testjar2.jar").toAbsolutePath().normalize();
+        final var dir1 = Paths.get("src", "test", "resources", "dir1").toAbsolutePath().normalize();
+
+        var first = UFSP.newFileSystem(null, jar1, jar2);
+        var second = UFSP.newFileSystem(null, jar1, jar2);
+        var reversed = UFSP.newFileSystem(null, jar2, jar1);
+        var filtered = UFSP.newFileSystem((entry, base) -> !entry.startsWith("META-INF/"), jar1, jar2);
+        var dirs = UFSP.newFileSystem(null, dir1);
+        var otherDirs = UFSP.newFileSystem(null, dir1);
+        try {
+            assertAll(
+                    () -> assertEquals(first.fingerprint(), second.fingerprint(), "Same contents have the same fingerprint"),
+                    () -> assertEquals(32, first.fingerprint().toString().length()),
+                    () -> assertNotEquals(first.fingerprint(), reversed.fingerprint(), "Shadowing changes the fingerprint"),
+                    () -> assertNotEquals(first.fingerprint(), filtered.fingerprint(), "Filtered entries are not part of the fingerprint"),
+                    () -> assertEquals(dirs.fingerprint(), otherDirs.fingerprint(), "Same directories have the same fingerprint")
+            );
+        } finally {
+            first.close();
+            second.close();
+            reversed.close();
+            filtered.close();
+            dirs.close();
+            otherDirs.close();
+        }
+    }
+
+    @Test
+    void testFingerprintChangesWithContents(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("a.txt"), "a");
+        Files.createDirectories(dir.resolve("b"));
+        Files.writeString(dir.resolve("b/c.txt"), "c");
+
+        ContentFingerprint before;
+        try (var fileSystem = UFSP.newFileSystem(null, dir)) {
+            before = fileSystem.fingerprint();
+        }
+        try (var fileSystem = UFSP.newFileSystem(null, dir)) {
+            assertEquals(before, fileSystem.fingerprint(), "Unchanged files have the same fingerprint");
+        }
+
+        Files.writeString(dir.resolve("b/c.txt"), "changed");
+        try (var fileSystem = UFSP.newFileSystem(null, dir)) {
+            assertNotEquals(before, fileSystem.fingerprint(), "Changing a file changes the fingerprint");
+        }
+    }
 }
@@ -0,0 +1,10 @@
+package cpw.mods.cl.testjar1;
+
+/**
+ * Refers to {@link SomeClass} from its constant pool. Referenced by {@code TestClassLoader}.
+ */
+public class ReferencesSomeClass {
+    public static Object create() {
+        return new SomeClass();
+    }
+}